@@ -218,5 +218,6 @@ public class Project {
                 trace, seed, windowsize, timeout);
 
         simulator.runSimulator();
+        System.out.flush();
     }
 }
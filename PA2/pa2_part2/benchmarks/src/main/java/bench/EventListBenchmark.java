@@ -0,0 +1,77 @@
+package bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * EventList operations at a steady queue size.
+ *
+ * hold is the classic hold model: remove the earliest event and add one
+ * a random increment later, so the list keeps its size.  restartTimer is
+ * the startTimer/stopTimer pattern: find and remove a host's pending
+ * timer among size packet arrivals and put it back later.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventListBenchmark {
+    private static final int INCREMENTS = 1 << 12;
+
+    @Param({"vector", "heap", "calendar", "store"})
+    public String list;
+
+    @Param({"16", "256", "4096"})
+    public int size;
+
+    private Object events;
+    private double[] increments;
+    private int next;
+    private double clock;
+
+    @Setup(Level.Iteration)
+    public void fill() throws Throwable {
+        events = Sim.NEW_EVENT_LIST.invokeExact(list);
+        SplittableRandom random = new SplittableRandom(7);
+        increments = new double[INCREMENTS];
+        for (int i = 0; i < INCREMENTS; i++) {
+            // Mean spacing of one time unit per pending event
+            increments[i] = random.nextDouble(0, 2.0 * size);
+        }
+        clock = 0;
+        next = 0;
+        for (int i = 0; i < size - 1; i++) {
+            add(Sim.FROMLAYER3, 1 + (i & 1));
+        }
+        add(Sim.TIMERINTERRUPT, 0);
+    }
+
+    private void add(int type, int entity) throws Throwable {
+        double t = clock + increments[next++ & (INCREMENTS - 1)];
+        boolean added = (boolean) Sim.ADD.invokeExact(events,
+                (Object) Sim.WRAP.invokeExact(t, type, entity, (Object) null));
+    }
+
+    @Benchmark
+    public Object hold() throws Throwable {
+        Object e = Sim.REMOVE_NEXT.invokeExact(events);
+        clock = (double) Sim.TIME.invokeExact(e);
+        boolean set = (boolean) Sim.SET_TIME.invokeExact(e,
+                clock + increments[next++ & (INCREMENTS - 1)]);
+        boolean added = (boolean) Sim.ADD.invokeExact(events, e);
+        return e;
+    }
+
+    @Benchmark
+    public Object restartTimer() throws Throwable {
+        Object timer = Sim.REMOVE_TIMER.invokeExact(events, 0);
+        boolean set = (boolean) Sim.SET_TIME.invokeExact(timer,
+                clock + increments[next++ & (INCREMENTS - 1)]);
+        boolean added = (boolean) Sim.ADD.invokeExact(events, timer);
+        return timer;
+    }
+}
@@ -0,0 +1,60 @@
+package bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Per-packet costs: building and copying a data packet with a full SACK
+ * list, and each checksum over a MAXDATASIZE payload as text and bytes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketBenchmark {
+    @Param({"CharSumChecksum", "InternetChecksum", "Crc32cChecksum"})
+    public String checksum;
+
+    private final String payload = "kkkkkkkkkkkkkkkkkkkk";
+    private final byte[] payloadBytes = payload.getBytes(StandardCharsets.ISO_8859_1);
+    private final Deque<Integer> sack = new ArrayDeque<>();
+    private Object strategy;
+    private Object packet;
+    private int seq;
+
+    @Setup
+    public void setUp() throws Throwable {
+        for (int i = 1; i <= 5; i++) {
+            sack.add(i);
+        }
+        strategy = Sim.checksum(checksum);
+        packet = Sim.NEW_PACKET.invokeExact(3, -1, 0, payload, sack);
+        Sim.SEAL.invokeExact(packet);
+    }
+
+    @Benchmark
+    public Object build() throws Throwable {
+        return Sim.NEW_PACKET.invokeExact(seq++ & 15, -1, 0, payload, sack);
+    }
+
+    @Benchmark
+    public Object copy() throws Throwable {
+        return Sim.COPY_PACKET.invokeExact(packet);
+    }
+
+    @Benchmark
+    public int checksumText() throws Throwable {
+        return (int) Sim.CHECKSUM_STRING.invokeExact(strategy, seq++ & 15, -1, payload);
+    }
+
+    @Benchmark
+    public int checksumBytes() throws Throwable {
+        return (int) Sim.CHECKSUM_BYTES.invokeExact(strategy, seq++ & 15, -1, payloadBytes);
+    }
+}
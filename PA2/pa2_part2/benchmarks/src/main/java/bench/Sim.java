@@ -0,0 +1,153 @@
+package bench;
+
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Deque;
+
+/**
+ * Handles on the simulator's classes, which live in the default package
+ * and so cannot be named from here (JMH refuses benchmarks in the default
+ * package).  Every handle is adapted to Object for the simulator types
+ * and held in a static final field, which the JIT treats as a constant,
+ * so calls through it compile to direct calls.
+ */
+final class Sim {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    static final Class<?> EVENT_LIST = load("EventList");
+    static final Class<?> EVENT = load("Event");
+    static final Class<?> PACKET = load("Packet");
+    static final Class<?> CHECKSUM = load("PacketChecksum");
+    static final Class<?> SIMULATOR = load("StudentNetworkSimulator");
+    static final Class<?> PROTOCOL = load("TransportProtocol");
+    static final Class<?> RESULT = load("SimulationResult");
+
+    static final int TIMERINTERRUPT = 0;
+    static final int FROMLAYER3 = 2;
+
+    /** (String name) -> EventList, as EventLists.create */
+    static final MethodHandle NEW_EVENT_LIST = find("EventLists", "create", true,
+            MethodType.methodType(EVENT_LIST, String.class));
+    /** (EventList, Event) -> boolean */
+    static final MethodHandle ADD = find(EVENT_LIST, "add", false,
+            MethodType.methodType(boolean.class, EVENT));
+    /** (EventList) -> Event */
+    static final MethodHandle REMOVE_NEXT = find(EVENT_LIST, "removeNext", false,
+            MethodType.methodType(EVENT));
+    /** (EventList, int entity) -> Event */
+    static final MethodHandle REMOVE_TIMER = find(EVENT_LIST, "removeTimer", false,
+            MethodType.methodType(EVENT, int.class));
+    /** (double, int, int, Packet) -> Event */
+    static final MethodHandle WRAP = find(EVENT, "wrap", true,
+            MethodType.methodType(EVENT, double.class, int.class, int.class, PACKET));
+    /** (Event) -> double */
+    static final MethodHandle TIME = find(EVENT, "getTime", false,
+            MethodType.methodType(double.class));
+    /** (Event, double) -> boolean */
+    static final MethodHandle SET_TIME = find(EVENT, "setTime", false,
+            MethodType.methodType(boolean.class, double.class));
+
+    /** (int, int, int, String, Deque) -> Packet */
+    static final MethodHandle NEW_PACKET = constructor(PACKET,
+            int.class, int.class, int.class, String.class, Deque.class);
+    /** (Packet) -> Packet */
+    static final MethodHandle COPY_PACKET = constructor(PACKET, PACKET);
+    /** (Packet) -> void */
+    static final MethodHandle SEAL = find(PACKET, "seal", false,
+            MethodType.methodType(void.class));
+
+    /** (PacketChecksum, int, int, String) -> int */
+    static final MethodHandle CHECKSUM_STRING = find(CHECKSUM, "compute", false,
+            MethodType.methodType(int.class, int.class, int.class, String.class));
+    /** (PacketChecksum, int, int, byte[]) -> int */
+    static final MethodHandle CHECKSUM_BYTES = find(CHECKSUM, "compute", false,
+            MethodType.methodType(int.class, int.class, int.class, byte[].class));
+
+    /** (String name) -> TransportProtocol, as TransportProtocols.create */
+    static final MethodHandle NEW_PROTOCOL = find("TransportProtocols", "create", true,
+            MethodType.methodType(PROTOCOL, String.class));
+
+    /** (nsim, loss, corrupt, delay, trace, seed, window, timeout, EventList, TransportProtocol) */
+    static final MethodHandle NEW_SIMULATOR = constructor(SIMULATOR,
+            int.class, double.class, double.class, double.class, int.class,
+            int.class, int.class, double.class, EVENT_LIST, PROTOCOL);
+    /** (StudentNetworkSimulator, String) -> void */
+    static final MethodHandle SET_DELIVERY_FILE = find(SIMULATOR, "setDeliveryFile", false,
+            MethodType.methodType(void.class, String.class));
+    /** (StudentNetworkSimulator, PrintStream) -> void */
+    static final MethodHandle SET_OUTPUT = find(SIMULATOR, "setOutput", false,
+            MethodType.methodType(void.class, PrintStream.class));
+    /** (StudentNetworkSimulator) -> void */
+    static final MethodHandle RUN = find(SIMULATOR, "runSimulator", false,
+            MethodType.methodType(void.class));
+    /** (StudentNetworkSimulator) -> SimulationResult */
+    static final MethodHandle RESULT_OF = find(SIMULATOR, "getResult", false,
+            MethodType.methodType(RESULT));
+    /** (SimulationResult) -> int */
+    static final MethodHandle DELIVERED = find(RESULT, "getDelivered", false,
+            MethodType.methodType(int.class));
+
+    private Sim() {
+    }
+
+    /**
+     * A PacketChecksum by class name, e.g. "Crc32cChecksum".
+     */
+    static Object checksum(String className) {
+        try {
+            return load(className).getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Simulator class missing: " + name, e);
+        }
+    }
+
+    private static MethodHandle find(String owner, String name, boolean isStatic,
+                                     MethodType type) {
+        return find(load(owner), name, isStatic, type);
+    }
+
+    private static MethodHandle find(Class<?> owner, String name, boolean isStatic,
+                                     MethodType type) {
+        try {
+            MethodHandle h = isStatic ? LOOKUP.findStatic(owner, name, type)
+                    : LOOKUP.findVirtual(owner, name, type);
+            return h.asType(erased(h.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // The type with every simulator class replaced by Object
+    private static MethodType erased(MethodType type) {
+        MethodType t = type.changeReturnType(erase(type.returnType()));
+        for (int i = 0; i < t.parameterCount(); i++) {
+            t = t.changeParameterType(i, erase(t.parameterType(i)));
+        }
+        return t;
+    }
+
+    private static Class<?> erase(Class<?> c) {
+        return (!c.isPrimitive() && !c.isArray() && c.getPackageName().isEmpty())
+                ? Object.class : c;
+    }
+
+    private static MethodHandle constructor(Class<?> owner, Class<?>... parameters) {
+        try {
+            MethodHandle h = LOOKUP.findConstructor(owner,
+                    MethodType.methodType(void.class, parameters));
+            return h.asType(erased(h.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Whole runs of StudentNetworkSimulator, tracing off and deliveries
+ * discarded, for a few representative channels and each transport
+ * protocol.  Every protocol sees the same seed.  Besides runs per second,
+ * the messages counter gives layer 5 messages delivered per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimulatorBenchmark {
+    /** loss/corrupt/window */
+    @Param({"0.0/0.0/8", "0.1/0.1/8", "0.2/0.2/8", "0.1/0.1/16"})
+    public String channel;
+
+    @Param({"sack", "sack-timers", "gbn", "sr"})
+    public String protocol;
+
+    @Param({"heap", "store"})
+    public String list;
+
+    @Param({"1000"})
+    public int nsim;
+
+    private double loss;
+    private double corrupt;
+    private int window;
+    private final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Delivered {
+        public long messages;
+    }
+
+    @Setup
+    public void parse() {
+        String[] f = channel.split("/");
+        loss = Double.parseDouble(f[0]);
+        corrupt = Double.parseDouble(f[1]);
+        window = Integer.parseInt(f[2]);
+    }
+
+    @Benchmark
+    public Object run(Delivered delivered) throws Throwable {
+        Object events = Sim.NEW_EVENT_LIST.invokeExact(list);
+        Object transport = Sim.NEW_PROTOCOL.invokeExact(protocol);
+        Object simulator = Sim.NEW_SIMULATOR.invokeExact(nsim, loss, corrupt, 50.0, 0, 7,
+                window, 30.0, events, transport);
+        Sim.SET_DELIVERY_FILE.invokeExact(simulator, (String) null);
+        Sim.SET_OUTPUT.invokeExact(simulator, discard);
+        Sim.RUN.invokeExact(simulator);
+        Object result = Sim.RESULT_OF.invokeExact(simulator);
+        delivered.messages += (int) Sim.DELIVERED.invokeExact(result);
+        return result;
+    }
+}
@@ -0,0 +1,250 @@
+import java.util.*;
+
+/**
+ * Several StudentNetworkSimulator flows competing for one bottleneck link.
+ *
+ * The hosts form a dumbbell: flow i sends from host 2i to host 2i+1, and
+ * every sender is joined to router L = 2K and every receiver to router
+ * R = 2K+1 by lossless links of delay 1, which carry a packet per time
+ * unit each.  L sends to R over the bottleneck, which has a finite rate
+ * and a queue; the way back from R to L has the same rate and
+ * propagation delay but a queue that never drops, so acknowledgements
+ * are only held up by each other.  Both directions lose and corrupt
+ * packets with the given probabilities.  Layer 5 messages go to the
+ * senders in turn.
+ *
+ * Simulation_done reports each flow's goodput, the time its packets
+ * waited in the bottleneck queue and how many the queue dropped, and
+ * Jain's fairness index over the goodputs.
+ *
+ * The flows' deliveries share one file, so the run is always sequential.
+ */
+public class BottleneckSimulator extends NetworkSimulator {
+    private final int flowCount;
+    private final int window;
+    private final double timeout;
+    private final String protocol;
+    private final String congestion;
+    private final String rto;
+    private final StudentNetworkSimulator[] flows;
+    private final Topology.Link bottleneck;
+
+    // Per flow: packets through the bottleneck queue, their total wait,
+    // and packets the queue dropped
+    private final long[] queued;
+    private final double[] queueDelay;
+    private final long[] dropped;
+
+    /**
+     * @param rate      bottleneck rate in bytes per time unit
+     * @param buffer    bottleneck queue capacity in packets
+     * @param discipline one of {@link QueueDisciplines#NAMES}
+     * @param linkDelay bottleneck propagation delay
+     * @param protocol  every flow's protocol, one of {@link TransportProtocols#NAMES}
+     * @param congestion every flow's congestion control, one of
+     *                  {@link CongestionControls#NAMES}
+     * @param rto       every flow's retransmission timeout, one of
+     *                  {@link TransportProtocol#TIMEOUTS}
+     */
+    public BottleneckSimulator(int flows, int numMessages, double loss, double corrupt,
+                               double avgDelay, int trace, int seed, int winsize,
+                               double timeout, double rate, int buffer,
+                               String discipline, double linkDelay, String protocol,
+                               String congestion, String rto) {
+        super(numMessages, loss, corrupt, avgDelay, trace, seed, new HeapEventList());
+        if (flows < 1) {
+            throw new IllegalArgumentException("Need at least one flow");
+        }
+        flowCount = flows;
+        window = winsize;
+        this.timeout = timeout;
+        this.protocol = protocol;
+        this.congestion = congestion;
+        this.rto = rto;
+        this.flows = new StudentNetworkSimulator[flows];
+        queued = new long[flows];
+        queueDelay = new double[flows];
+        dropped = new long[flows];
+
+        int left = 2 * flows;
+        int right = left + 1;
+        Topology t = new Topology(2 * flows + 2);
+        for (int i = 0; i < flows; i++) {
+            t.connect(sender(i), left, 0, 0, MIN_LINK_DELAY, 0);
+            t.connect(receiver(i), right, 0, 0, MIN_LINK_DELAY, 0);
+            t.addSource(sender(i));
+        }
+        bottleneck = t.addLink(left, right, loss, corrupt, linkDelay, 0);
+        bottleneck.setQueue(rate, QueueDisciplines.create(discipline, buffer,
+                (Packet.HEADER_SIZE + MAXDATASIZE) / rate));
+        t.addLink(right, left, loss, corrupt, linkDelay, 0).setRate(rate);
+        setTopology(t);
+    }
+
+    private static int sender(int flow) {
+        return 2 * flow;
+    }
+
+    private static int receiver(int flow) {
+        return 2 * flow + 1;
+    }
+
+    @Override
+    public void setWorkers(int n) {
+        if (n > 1) {
+            throw new IllegalArgumentException("Flows are simulated sequentially");
+        }
+        super.setWorkers(n);
+    }
+
+    // A fresh set of flows for each run, attached once the trace exists
+    @Override
+    protected void aInit() {
+        for (int i = 0; i < flowCount; i++) {
+            flows[i] = new StudentNetworkSimulator(0, 0, 0, 1, traceLevel, 1,
+                    window, timeout, new EventListImpl(),
+                    TransportProtocols.create(protocol));
+            flows[i].setCongestionControl(congestion);
+            flows[i].setRetransmissionTimeout(rto);
+            flows[i].runAsFlow(this, sender(i), receiver(i));
+        }
+        Arrays.fill(queued, 0);
+        Arrays.fill(queueDelay, 0);
+        Arrays.fill(dropped, 0);
+    }
+
+    @Override
+    protected void bInit() {
+    }
+
+    @Override
+    protected void output(int host, Message message) {
+        flows[host / 2].aOutput(message);
+    }
+
+    @Override
+    protected void input(int host, Packet packet) {
+        if (host % 2 == 0) {
+            flows[host / 2].aInput(packet);
+        } else {
+            flows[host / 2].bInput(packet);
+        }
+    }
+
+    @Override
+    protected void timerInterrupt(int host) {
+        flows[host / 2].aTimerInterrupt();
+    }
+
+    // Every host belongs to a flow, so these are never called
+    @Override
+    protected void aOutput(Message message) {
+    }
+
+    @Override
+    protected void aInput(Packet packet) {
+    }
+
+    @Override
+    protected void aTimerInterrupt() {
+    }
+
+    @Override
+    protected void bInput(Packet packet) {
+    }
+
+    @Override
+    protected void packetQueued(Topology.Link link, Packet packet, double wait) {
+        if (link != bottleneck) {
+            return;
+        }
+        int flow = packet.getSource() / 2;
+        queued[flow]++;
+        queueDelay[flow] += wait;
+    }
+
+    @Override
+    protected void packetDropped(Topology.Link link, Packet packet) {
+        dropped[packet.getSource() / 2]++;
+    }
+
+    /**
+     * Layer 5 bytes delivered per time unit for each flow.
+     */
+    public double[] getGoodputs() {
+        double[] goodput = new double[flowCount];
+        double end = getTime();
+        for (int i = 0; i < flowCount; i++) {
+            goodput[i] = end > 0 ? (double) flows[i].getResult().getDelivered() * MAXDATASIZE / end : 0;
+        }
+        return goodput;
+    }
+
+    /**
+     * Jain's fairness index, (sum x)^2 / (n sum x^2): 1 when every flow
+     * gets the same share, 1/n when one flow gets everything.
+     */
+    public static double fairness(double[] x) {
+        double sum = 0;
+        double squares = 0;
+        for (double v : x) {
+            sum += v;
+            squares += v * v;
+        }
+        return squares > 0 ? sum * sum / (x.length * squares) : 1;
+    }
+
+    @Override
+    protected void Simulation_done() {
+        double[] goodput = getGoodputs();
+        out.println("\n\n===============FLOWS============================");
+        out.println("flow\tdelivered\tretransmissions\tgoodput\tavg_queue_delay\tqueue_drops\tavg_rtt");
+        for (int i = 0; i < flowCount; i++) {
+            SimulationResult r = flows[i].getResult();
+            out.println(i + "\t" + r.getDelivered() + "\t" + r.getRetransmissions()
+                    + "\t" + goodput[i]
+                    + "\t" + (queued[i] > 0 ? queueDelay[i] / queued[i] : 0)
+                    + "\t" + dropped[i] + "\t" + r.getAverageRTT());
+        }
+        out.println("Jain's fairness index: " + fairness(goodput));
+        out.println("Simulated time: " + getTime());
+        out.println("==================================================");
+    }
+
+    /**
+     * Arguments are {@code key=value}: flows, nsim, loss, corrupt, delay,
+     * window, timeout, trace, seed, rate, buffer, queue, linkdelay,
+     * protocol, congestion and rto.
+     */
+    public static void main(String[] argv) {
+        Map<String, String> a = new HashMap<>();
+        String[][] defaults = {
+                {"flows", "4"}, {"nsim", "2000"}, {"loss", "0.0"}, {"corrupt", "0.0"},
+                {"delay", "10"}, {"window", "8"}, {"timeout", "100"}, {"trace", "0"},
+                {"seed", "1"}, {"rate", "4"}, {"buffer", "20"}, {"queue", "droptail"},
+                {"linkdelay", "5"}, {"protocol", "sack"}, {"congestion", "none"},
+                {"rto", "fixed"}};
+        for (String[] d : defaults) {
+            a.put(d[0], d[1]);
+        }
+        for (String arg : argv) {
+            int eq = arg.indexOf('=');
+            if (eq < 0 || !a.containsKey(arg.substring(0, eq))) {
+                System.err.println("Unknown argument: " + arg);
+                System.exit(2);
+            }
+            a.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+
+        BottleneckSimulator simulator = new BottleneckSimulator(
+                Integer.parseInt(a.get("flows")), Integer.parseInt(a.get("nsim")),
+                Double.parseDouble(a.get("loss")), Double.parseDouble(a.get("corrupt")),
+                Double.parseDouble(a.get("delay")), Integer.parseInt(a.get("trace")),
+                Integer.parseInt(a.get("seed")), Integer.parseInt(a.get("window")),
+                Double.parseDouble(a.get("timeout")), Double.parseDouble(a.get("rate")),
+                Integer.parseInt(a.get("buffer")), a.get("queue"),
+                Double.parseDouble(a.get("linkdelay")), a.get("protocol"),
+                a.get("congestion"), a.get("rto"));
+        simulator.runSimulator();
+    }
+}
@@ -0,0 +1,315 @@
+// Calendar queue (R. Brown, CACM 1988).  Events are hashed by time into
+// an array of "day" buckets, each holding a short list sorted by
+// (time, insertion order), and removeNext() walks the days in order.
+// The number of days doubles or halves with the queue length, and each
+// resize re-derives the day width from the spacing of the earliest
+// pending events, so enqueue and dequeue stay O(1) amortised even with
+// tens of thousands of packets in flight.
+//
+// Timers and last-arrival times are kept in an EventIndex exactly as in
+// HeapEventList; cancelled timers are skipped on the way out and dropped
+// for good at the next resize.
+public class CalendarEventList implements EventList
+{
+    private static final int MIN_BUCKETS = 2;
+    private static final int SAMPLE_SIZE = 25;
+
+    private static class Node
+    {
+        double time;
+        long order;
+        Event event;
+        Node next;
+    }
+
+    private Node[] buckets;
+    private int mask;
+    private double width;
+    private long currentDay;
+    private int size;
+    private long nextOrder;
+    private Node free;
+    private boolean resizeEnabled;
+    private EventIndex index;
+
+    public CalendarEventList()
+    {
+        this(1.0);
+    }
+
+    // Start with the given day width; it is re-estimated on every resize
+    public CalendarEventList(double initialWidth)
+    {
+        buckets = new Node[MIN_BUCKETS];
+        mask = MIN_BUCKETS - 1;
+        width = initialWidth > 0 ? initialWidth : 1.0;
+        currentDay = 0;
+        size = 0;
+        nextOrder = 0;
+        free = null;
+        resizeEnabled = true;
+        index = new EventIndex();
+    }
+
+    public boolean add(Event e)
+    {
+        Node n = allocate();
+        n.time = e.getTime();
+        n.order = nextOrder++;
+        n.event = e;
+        insert(n);
+        index.added(e, n.order);
+
+        if (resizeEnabled && (size > 2 * buckets.length))
+        {
+            resize(buckets.length * 2);
+        }
+        return true;
+    }
+
+    public Event removeNext()
+    {
+        while (size > 0)
+        {
+            Node head = pop();
+            Event next = head.event;
+            long handle = head.order;
+            release(head);
+
+            if (resizeEnabled && (buckets.length > MIN_BUCKETS) &&
+                (size < buckets.length / 2))
+            {
+                resize(buckets.length / 2);
+            }
+
+            if (index.isLive(next, handle))
+            {
+                index.removed(next);
+                return next;
+            }
+            index.discarded();
+        }
+
+        return null;
+    }
+
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < buckets.length; i++)
+        {
+            for (Node n = buckets[i]; n != null; n = n.next)
+            {
+                if (!index.isLive(n.event, n.order))
+                {
+                    continue;
+                }
+                if (sb.length() > 1)
+                {
+                    sb.append(", ");
+                }
+                sb.append(n.event);
+            }
+        }
+        return sb.append("]").toString();
+    }
+
+    public Event removeTimer(int entity)
+    {
+        return index.cancelTimer(entity);
+    }
+
+    public double getLastPacketTime(int entityTo)
+    {
+        return index.getLastPacketTime(entityTo);
+    }
+
+    private long dayOf(double time)
+    {
+        return (long)Math.floor(time / width);
+    }
+
+    // Insert in time order within the bucket; equal times keep FIFO order
+    private void insert(Node n)
+    {
+        double time = n.time;
+        long order = n.order;
+        long day = dayOf(time);
+        if ((size == 0) || (day < currentDay))
+        {
+            currentDay = day;
+        }
+
+        int b = (int)(day & mask);
+        Node prev = null;
+        Node cur = buckets[b];
+        while ((cur != null) &&
+               ((cur.time < time) || ((cur.time == time) && (cur.order < order))))
+        {
+            prev = cur;
+            cur = cur.next;
+        }
+        n.next = cur;
+        if (prev == null)
+        {
+            buckets[b] = n;
+        }
+        else
+        {
+            prev.next = n;
+        }
+        size++;
+    }
+
+    // Unlink and return the earliest node; size must be positive
+    private Node pop()
+    {
+        for (int scanned = 0; scanned < buckets.length; scanned++)
+        {
+            int b = (int)(currentDay & mask);
+            Node head = buckets[b];
+            if ((head != null) && (dayOf(head.time) <= currentDay))
+            {
+                return unlinkHead(b);
+            }
+            currentDay++;
+        }
+
+        // Nothing due within a whole year: jump straight to the earliest
+        // bucket head instead of walking empty days
+        int best = -1;
+        for (int b = 0; b < buckets.length; b++)
+        {
+            Node head = buckets[b];
+            if ((head != null) &&
+                ((best == -1) || (head.time < buckets[best].time) ||
+                 ((head.time == buckets[best].time) &&
+                  (head.order < buckets[best].order))))
+            {
+                best = b;
+            }
+        }
+        currentDay = dayOf(buckets[best].time);
+        return unlinkHead(best);
+    }
+
+    private Node unlinkHead(int b)
+    {
+        Node head = buckets[b];
+        buckets[b] = head.next;
+        head.next = null;
+        size--;
+        return head;
+    }
+
+    // Rebuild with a new bucket count and a day width estimated from the
+    // gaps between the earliest live events
+    private void resize(int newBuckets)
+    {
+        resizeEnabled = false;
+
+        int samples = Math.min(size, SAMPLE_SIZE);
+        Node[] early = new Node[samples];
+        int taken = 0;
+        while ((taken < samples) && (size > 0))
+        {
+            Node n = pop();
+            if (index.isLive(n.event, n.order))
+            {
+                early[taken++] = n;
+            }
+            else
+            {
+                index.discarded();
+                release(n);
+            }
+        }
+
+        double newWidth = estimateWidth(early, taken);
+
+        Node[] old = buckets;
+        buckets = new Node[newBuckets];
+        mask = newBuckets - 1;
+        width = newWidth;
+        size = 0;
+
+        for (int i = 0; i < taken; i++)
+        {
+            insert(early[i]);
+        }
+        for (int i = 0; i < old.length; i++)
+        {
+            Node n = old[i];
+            while (n != null)
+            {
+                Node next = n.next;
+                if (index.isLive(n.event, n.order))
+                {
+                    insert(n);
+                }
+                else
+                {
+                    index.discarded();
+                    release(n);
+                }
+                n = next;
+            }
+        }
+
+        resizeEnabled = true;
+    }
+
+    private double estimateWidth(Node[] early, int count)
+    {
+        if (count < 2)
+        {
+            return width;
+        }
+
+        double total = early[count - 1].time - early[0].time;
+        double average = total / (count - 1);
+        if (average <= 0)
+        {
+            return width;
+        }
+
+        // Ignore outlying gaps so one long idle period does not blow up
+        // the day width
+        double trimmed = 0;
+        int gaps = 0;
+        for (int i = 1; i < count; i++)
+        {
+            double gap = early[i].time - early[i - 1].time;
+            if (gap < 2 * average)
+            {
+                trimmed += gap;
+                gaps++;
+            }
+        }
+
+        if ((gaps == 0) || (trimmed <= 0))
+        {
+            return 3 * average;
+        }
+        return 3 * trimmed / gaps;
+    }
+
+    private Node allocate()
+    {
+        Node n = free;
+        if (n == null)
+        {
+            return new Node();
+        }
+        free = n.next;
+        n.next = null;
+        return n;
+    }
+
+    private void release(Node n)
+    {
+        n.event = null;
+        n.next = free;
+        free = n;
+    }
+}
@@ -0,0 +1,31 @@
+// The original checksum: the plain sum of the payload characters.  The
+// header is not covered, so damage to seqnum/acknum is only caught by the
+// receiver's range checks.  Kept for comparison with earlier runs.
+public class CharSumChecksum implements PacketChecksum
+{
+    public int compute(int seqnum, int acknum, String payload)
+    {
+        int sum = 0;
+        if (payload != null)
+        {
+            for (int i = 0; i < payload.length(); i++)
+            {
+                sum += payload.charAt(i);
+            }
+        }
+        return sum;
+    }
+
+    public int compute(int seqnum, int acknum, byte[] payload)
+    {
+        int sum = 0;
+        if (payload != null)
+        {
+            for (int i = 0; i < payload.length; i++)
+            {
+                sum += payload[i] & 0xFF;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,150 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+
+// Binary encoding of the objects that make up a simulator snapshot.
+// NetworkSimulator writes the file; subclasses use these helpers from
+// saveState/restoreState for their own protocol state.
+public class Checkpoint
+{
+    public static final int MAGIC = 0x4E534350; // "NSCP"
+    public static final int VERSION = 13;
+
+    private static final int TEXT = 0;
+    private static final int BINARY = 1;
+
+    private Checkpoint()
+    {
+    }
+
+    public static void writePacket(DataOutputStream out, Packet p)
+        throws IOException
+    {
+        out.writeBoolean(p != null);
+        if (p == null)
+        {
+            return;
+        }
+        out.writeInt(p.getSeqnum());
+        out.writeInt(p.getAcknum());
+        out.writeInt(p.getChecksum());
+        if (p.isBinary())
+        {
+            out.writeByte(BINARY);
+            writeBytes(out, p.getPayloadBytes());
+        }
+        else
+        {
+            out.writeByte(TEXT);
+            out.writeUTF(p.getPayload() == null ? "" : p.getPayload());
+        }
+        writeIntDeque(out, p.getMostRecentAck());
+        out.writeInt(p.getSource());
+        out.writeInt(p.getDestination());
+        out.writeDouble(p.getLayer5Time());
+        out.writeBoolean(p.isSealed());
+    }
+
+    public static Packet readPacket(DataInputStream in) throws IOException
+    {
+        if (!in.readBoolean())
+        {
+            return null;
+        }
+        int seq = in.readInt();
+        int ack = in.readInt();
+        int check = in.readInt();
+        Packet p;
+        if (in.readByte() == BINARY)
+        {
+            byte[] payload = readBytes(in);
+            p = new Packet(seq, ack, check, payload, readIntDeque(in));
+        }
+        else
+        {
+            String payload = in.readUTF();
+            p = new Packet(seq, ack, check, payload, readIntDeque(in));
+        }
+        int source = in.readInt();
+        p.setAddress(source, in.readInt());
+        p.setLayer5Time(in.readDouble());
+        if (in.readBoolean())
+        {
+            p.seal();
+        }
+        return p;
+    }
+
+    public static void writeMessage(DataOutputStream out, Message m)
+        throws IOException
+    {
+        if (m.isBinary())
+        {
+            out.writeByte(BINARY);
+            writeBytes(out, m.getBytes());
+        }
+        else
+        {
+            out.writeByte(TEXT);
+            out.writeUTF(m.getData());
+        }
+    }
+
+    public static Message readMessage(DataInputStream in) throws IOException
+    {
+        if (in.readByte() == BINARY)
+        {
+            return new Message(readBytes(in));
+        }
+        return new Message(in.readUTF());
+    }
+
+    // A null deque or list is written as length -1
+    public static void writeIntDeque(DataOutputStream out, Collection<Integer> d)
+        throws IOException
+    {
+        if (d == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(d.size());
+        for (Integer i : d)
+        {
+            out.writeInt(i);
+        }
+    }
+
+    public static Deque<Integer> readIntDeque(DataInputStream in)
+        throws IOException
+    {
+        int n = in.readInt();
+        if (n < 0)
+        {
+            return null;
+        }
+        Deque<Integer> d = new ArrayDeque<>();
+        for (int i = 0; i < n; i++)
+        {
+            d.addLast(in.readInt());
+        }
+        return d;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] b)
+        throws IOException
+    {
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException
+    {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return b;
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.function.DoubleSupplier;
+
+// Controlled Delay (RFC 8289).  Once packets have waited longer than
+// target for a whole interval, packets are dropped at the head at
+// intervals shrinking as interval / sqrt(count), until the wait falls
+// below target again.  The buffer also drops arrivals when it is full.
+public class CoDelQueue implements QueueDiscipline
+{
+    private final int capacity;
+    private final double target;
+    private final double interval;
+
+    private double firstAboveTime;
+    private double dropNext;
+    private int count;
+    private int lastCount;
+    private boolean dropping;
+
+    public CoDelQueue(int capacity, double target, double interval)
+    {
+        this.capacity = capacity;
+        this.target = target;
+        this.interval = interval;
+    }
+
+    public boolean enqueue(double now, int queued, double lastDeparture,
+                           DoubleSupplier random)
+    {
+        return queued < capacity;
+    }
+
+    public boolean dequeue(double now, double sojourn)
+    {
+        boolean okToDrop = okToDrop(now, sojourn);
+        if (dropping)
+        {
+            if (!okToDrop)
+            {
+                dropping = false;
+                return true;
+            }
+            if (now >= dropNext)
+            {
+                count++;
+                dropNext = controlLaw(dropNext);
+                return false;
+            }
+            return true;
+        }
+
+        if (okToDrop)
+        {
+            // Enter the dropping state, picking up where the last one
+            // left off if it was recent
+            dropping = true;
+            int delta = count - lastCount;
+            count = 1;
+            if ((delta > 1) && (now - dropNext < 16 * interval))
+            {
+                count = delta;
+            }
+            dropNext = controlLaw(now);
+            lastCount = count;
+            return false;
+        }
+        return true;
+    }
+
+    private boolean okToDrop(double now, double sojourn)
+    {
+        if (sojourn < target)
+        {
+            firstAboveTime = 0;
+            return false;
+        }
+        if (firstAboveTime == 0)
+        {
+            firstAboveTime = now + interval;
+            return false;
+        }
+        return now >= firstAboveTime;
+    }
+
+    private double controlLaw(double t)
+    {
+        return t + interval / Math.sqrt(count);
+    }
+}
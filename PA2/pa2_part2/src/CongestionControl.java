@@ -0,0 +1,38 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// Decides how many packets a sender may have in flight.  The protocol
+// reports what its ACKs and timer tell it, with flight the number of
+// packets sent and not yet cumulatively acknowledged at that moment, and
+// sends no new packet while flight is at least window().  Windows are in
+// packets and never exceed the sender's WindowSize.
+public interface CongestionControl
+{
+    // The short name the control is created by in CongestionControls
+    public String getName();
+
+    // Packets the sender may have in flight
+    public double window();
+
+    // The slow start threshold, in packets
+    public double threshold();
+
+    // ACKs arriving at time now cumulatively acknowledged acked new packets
+    public void onAck(double now, int acked, int flight);
+
+    // An ACK acknowledged nothing new
+    public void onDuplicateAck(double now, int flight);
+
+    // The sender resent a packet it believes lost without waiting for the
+    // timer.  Only the first in a window of data reduces the window.
+    public void onFastRetransmit(double now, int flight);
+
+    // The retransmission timer ran out
+    public void onTimeout(double now, int flight);
+
+    // Checkpoint support
+    public void save(DataOutputStream cp) throws IOException;
+
+    public void restore(DataInputStream cp) throws IOException;
+}
@@ -0,0 +1,30 @@
+/**
+ * Builds CongestionControl implementations from the short names used on
+ * launcher command lines.
+ */
+public class CongestionControls {
+    public static final String NAMES = "none, reno, newreno, cubic";
+
+    private CongestionControls() {
+    }
+
+    /**
+     * A control for a sender whose window may never exceed maxWindow
+     * packets.
+     */
+    public static CongestionControl create(String name, int maxWindow) {
+        switch (name) {
+            case "none":
+                return new FixedWindow(maxWindow);
+            case "reno":
+                return new RenoCongestion(maxWindow, false);
+            case "newreno":
+                return new RenoCongestion(maxWindow, true);
+            case "cubic":
+                return new CubicCongestion(maxWindow);
+            default:
+                throw new IllegalArgumentException("Unknown congestion control: " + name
+                        + " (expected one of " + NAMES + ")");
+        }
+    }
+}
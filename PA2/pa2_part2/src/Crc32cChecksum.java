@@ -0,0 +1,66 @@
+import java.util.zip.CRC32C;
+
+// CRC-32C (Castagnoli) over seqnum, acknum and the payload bytes.  The
+// header and payload are laid out in a reused scratch buffer so that each
+// checksum is a single CRC32C.update(byte[], ...) call, which the JIT
+// compiles to the CPU's CRC instructions where available.  The scratch
+// buffer is guarded by the instance lock, since the parallel engine can
+// check packets for two entities at once.
+public class Crc32cChecksum implements PacketChecksum
+{
+    private static final int HEADER_SIZE = 8;
+
+    private final CRC32C crc = new CRC32C();
+    private byte[] scratch = new byte[HEADER_SIZE + NetworkSimulator.MAXDATASIZE];
+
+    public synchronized int compute(int seqnum, int acknum, String payload)
+    {
+        int n = (payload == null) ? 0 : payload.length();
+        ensureCapacity(n);
+        putHeader(seqnum, acknum);
+        for (int i = 0; i < n; i++)
+        {
+            scratch[HEADER_SIZE + i] = (byte)payload.charAt(i);
+        }
+        return finish(n);
+    }
+
+    public synchronized int compute(int seqnum, int acknum, byte[] payload)
+    {
+        int n = (payload == null) ? 0 : payload.length;
+        ensureCapacity(n);
+        putHeader(seqnum, acknum);
+        if (n > 0)
+        {
+            System.arraycopy(payload, 0, scratch, HEADER_SIZE, n);
+        }
+        return finish(n);
+    }
+
+    private void putHeader(int seqnum, int acknum)
+    {
+        scratch[0] = (byte)(seqnum >>> 24);
+        scratch[1] = (byte)(seqnum >>> 16);
+        scratch[2] = (byte)(seqnum >>> 8);
+        scratch[3] = (byte)seqnum;
+        scratch[4] = (byte)(acknum >>> 24);
+        scratch[5] = (byte)(acknum >>> 16);
+        scratch[6] = (byte)(acknum >>> 8);
+        scratch[7] = (byte)acknum;
+    }
+
+    private int finish(int payloadLength)
+    {
+        crc.reset();
+        crc.update(scratch, 0, HEADER_SIZE + payloadLength);
+        return (int)crc.getValue();
+    }
+
+    private void ensureCapacity(int payloadLength)
+    {
+        if (HEADER_SIZE + payloadLength > scratch.length)
+        {
+            scratch = new byte[HEADER_SIZE + payloadLength];
+        }
+    }
+}
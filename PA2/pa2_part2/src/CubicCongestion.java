@@ -0,0 +1,165 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// CUBIC (RFC 9438) in packets, with simulated time read as milliseconds
+// as the queue disciplines do.  After a reduction the window follows
+//
+//     W(t) = C (t - K)^3 + W_max,   K = cbrt((W_max - cwnd) / C)
+//
+// from the moment growth resumes, t in seconds, so it climbs quickly
+// back towards the window at the last loss, levels off around it and
+// then probes beyond.  Where Reno would grow faster (short RTTs, small
+// windows) the window tracks the Reno estimate instead.  Losses multiply
+// the window by beta, with fast convergence lowering W_max when the
+// window had not regained the previous one.  Slow start and recovery are
+// as for NewReno, except that the window is held, not inflated, during
+// recovery.
+//
+// The target is W(t) rather than W(t + RTT), since the sender does not
+// tell the control its RTT; growth lags the RFC by one round trip.
+public class CubicCongestion implements CongestionControl
+{
+    public static final double C = 0.4;
+    public static final double BETA = 0.7;
+    private static final double ALPHA = 3 * (1 - BETA) / (1 + BETA);
+
+    private final int maxWindow;
+
+    private double cwnd = 1;
+    private double ssthresh;
+    private double wMax = 0;
+    private double k = 0;
+    private double wEst = 0;
+    // Start of the current growth epoch, or -1 before it begins
+    private double epochStart = -1;
+    private boolean recovering = false;
+    private int recover = 0;
+
+    public CubicCongestion(int maxWindow)
+    {
+        this.maxWindow = maxWindow;
+        ssthresh = maxWindow;
+    }
+
+    public String getName()
+    {
+        return "cubic";
+    }
+
+    public double window()
+    {
+        return cwnd;
+    }
+
+    public double threshold()
+    {
+        return ssthresh;
+    }
+
+    public void onAck(double now, int acked, int flight)
+    {
+        if (recovering)
+        {
+            recover -= acked;
+            if (recover > 0)
+            {
+                return;
+            }
+            recovering = false;
+        }
+
+        if (cwnd < ssthresh)
+        {
+            cwnd = Math.min(cwnd + acked, Math.max(ssthresh, 1));
+            cwnd = Math.min(cwnd, maxWindow);
+            return;
+        }
+
+        if (epochStart < 0)
+        {
+            epochStart = now;
+            if (cwnd < wMax)
+            {
+                k = Math.cbrt((wMax - cwnd) / C);
+            }
+            else
+            {
+                k = 0;
+                wMax = cwnd;
+            }
+            wEst = cwnd;
+        }
+
+        double t = (now - epochStart) / 1000;
+        double cubic = C * Math.pow(t - k, 3) + wMax;
+        wEst += ALPHA * acked / cwnd;
+        if (cubic < wEst)
+        {
+            // Reno-friendly region
+            cwnd = wEst;
+        }
+        else
+        {
+            double target = Math.min(Math.max(cubic, cwnd), 1.5 * cwnd);
+            cwnd += (target - cwnd) / cwnd * acked;
+        }
+        cwnd = Math.min(cwnd, maxWindow);
+    }
+
+    public void onDuplicateAck(double now, int flight)
+    {
+    }
+
+    public void onFastRetransmit(double now, int flight)
+    {
+        if (recovering)
+        {
+            return;
+        }
+        reduce();
+        cwnd = ssthresh;
+        recovering = true;
+        recover = flight;
+    }
+
+    public void onTimeout(double now, int flight)
+    {
+        reduce();
+        cwnd = 1;
+        recovering = false;
+        recover = 0;
+    }
+
+    private void reduce()
+    {
+        // Fast convergence: release bandwidth to newer flows
+        wMax = (cwnd < wMax) ? cwnd * (1 + BETA) / 2 : cwnd;
+        ssthresh = Math.max(cwnd * BETA, 2);
+        epochStart = -1;
+    }
+
+    public void save(DataOutputStream cp) throws IOException
+    {
+        cp.writeDouble(cwnd);
+        cp.writeDouble(ssthresh);
+        cp.writeDouble(wMax);
+        cp.writeDouble(k);
+        cp.writeDouble(wEst);
+        cp.writeDouble(epochStart);
+        cp.writeBoolean(recovering);
+        cp.writeInt(recover);
+    }
+
+    public void restore(DataInputStream cp) throws IOException
+    {
+        cwnd = cp.readDouble();
+        ssthresh = cp.readDouble();
+        wMax = cp.readDouble();
+        k = cp.readDouble();
+        wEst = cp.readDouble();
+        epochStart = cp.readDouble();
+        recovering = cp.readBoolean();
+        recover = cp.readInt();
+    }
+}
@@ -0,0 +1,144 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Writes layer 5 deliveries, one per line, to a file.
+//
+// Deliveries are encoded one byte per character into a direct buffer
+// that goes to the FileChannel in large sequential writes.  In mapped
+// mode the file is instead mapped in fixed-size regions that are filled
+// in place, and the file is cut back to the bytes actually written when
+// the sink is closed.
+public class DeliverySink
+{
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final long REGION_SIZE = 64L << 20;
+
+    private final FileChannel channel;
+    private final boolean mapped;
+    private ByteBuffer buffer;
+    private long regionStart;
+    private long size;
+
+    public DeliverySink(String fileName, boolean useMapping) throws IOException
+    {
+        this(fileName, useMapping, 0);
+    }
+
+    // Continue a file after its first resumeAt bytes, dropping anything
+    // beyond them; used when resuming from a checkpoint
+    public DeliverySink(String fileName, boolean useMapping, long resumeAt)
+        throws IOException
+    {
+        channel = FileChannel.open(Paths.get(fileName),
+                                   StandardOpenOption.CREATE,
+                                   StandardOpenOption.READ,
+                                   StandardOpenOption.WRITE);
+        channel.truncate(resumeAt);
+        mapped = useMapping;
+        size = resumeAt;
+        if (mapped)
+        {
+            regionStart = resumeAt;
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, regionStart,
+                                 REGION_SIZE);
+        }
+        else
+        {
+            channel.position(resumeAt);
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    }
+
+    // Bytes delivered so far, including any resumed prefix
+    public long size()
+    {
+        return size;
+    }
+
+    // Write the first MAXDATASIZE characters of data and a newline
+    public void deliver(String data) throws IOException
+    {
+        int n = Math.min(data.length(), NetworkSimulator.MAXDATASIZE);
+        reserve(n + 1);
+        for (int i = 0; i < n; i++)
+        {
+            buffer.put((byte)data.charAt(i));
+        }
+        buffer.put((byte)'\n');
+        size += n + 1;
+    }
+
+    public void deliver(byte[] data) throws IOException
+    {
+        int n = Math.min(data.length, NetworkSimulator.MAXDATASIZE);
+        reserve(n + 1);
+        buffer.put(data, 0, n);
+        buffer.put((byte)'\n');
+        size += n + 1;
+    }
+
+    // Push everything delivered so far to the file
+    public void flush() throws IOException
+    {
+        if (mapped)
+        {
+            ((MappedByteBuffer)buffer).force();
+        }
+        else
+        {
+            drain();
+        }
+    }
+
+    public void close() throws IOException
+    {
+        try
+        {
+            flush();
+            if (mapped)
+            {
+                buffer = null;
+                channel.truncate(size);
+            }
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    // Make room for n more bytes
+    private void reserve(int n) throws IOException
+    {
+        if (buffer.remaining() >= n)
+        {
+            return;
+        }
+
+        if (mapped)
+        {
+            // Move on to a fresh region starting at the current end
+            regionStart = size;
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, regionStart,
+                                 REGION_SIZE);
+        }
+        else
+        {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
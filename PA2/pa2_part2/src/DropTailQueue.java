@@ -0,0 +1,23 @@
+import java.util.function.DoubleSupplier;
+
+// A buffer of fixed size that drops arrivals when it is full.
+public class DropTailQueue implements QueueDiscipline
+{
+    private final int capacity;
+
+    public DropTailQueue(int capacity)
+    {
+        this.capacity = capacity;
+    }
+
+    public boolean enqueue(double now, int queued, double lastDeparture,
+                           DoubleSupplier random)
+    {
+        return queued < capacity;
+    }
+
+    public boolean dequeue(double now, double sojourn)
+    {
+        return true;
+    }
+}
@@ -18,7 +18,15 @@ public class Event
         time = t;
         type = ty;
         entity = ent;
-        packet = new Packet(p);
+        packet = p.isSealed() ? p : new Packet(p);
+    }
+            
+    // Build an event that takes ownership of p instead of copying it
+    public static Event wrap(double t, int ty, int ent, Packet p)
+    {
+        Event e = new Event(t, ty, ent);
+        e.packet = p;
+        return e;
     }
             
     public boolean setTime(double t)
@@ -43,8 +51,8 @@ public class Event
     
     public boolean setEntity(int n)
     {
-        if ((n != NetworkSimulator.A) &&
-            (n != NetworkSimulator.B))
+        // Any host of the topology; A and B are 0 and 1
+        if (n < 0)
         {
             entity = -1;
             return false;
@@ -60,6 +68,10 @@ public class Event
         {
             packet = null;
         }        
+        else if (p.isSealed())
+        {
+            packet = p;
+        }
         else
         {
             packet = new Packet(p.getSeqnum(), p.getAcknum(),
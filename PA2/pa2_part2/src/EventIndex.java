@@ -0,0 +1,147 @@
+import java.util.Arrays;
+
+// Secondary indices kept alongside an ordered event list so that
+// removeTimer() and getLastPacketTime() never have to scan it.
+//
+// Each entity has at most one live timer (NetworkSimulator.startTimer
+// refuses to start a second one).  Cancelling it only forgets its handle;
+// the event stays queued as a tombstone and is dropped when it reaches
+// the head of the list.  Arrivals are tracked as the latest FROMLAYER3
+// time still pending per destination, which is what toLayer3 needs to
+// keep the channel FIFO.
+class EventIndex
+{
+    private static final long NONE = -1;
+
+    private long[] timerHandle;
+    private Event[] timer;
+    private double[] lastArrival;
+    private int[] pendingArrivals;
+    private int tombstones;
+
+    EventIndex()
+    {
+        timerHandle = new long[2];
+        timer = new Event[2];
+        lastArrival = new double[2];
+        pendingArrivals = new int[2];
+        Arrays.fill(timerHandle, NONE);
+        tombstones = 0;
+    }
+
+    // Record an event that was just queued under the given handle
+    void added(Event e, long handle)
+    {
+        int entity = e.getEntity();
+        if (entity < 0)
+        {
+            return;
+        }
+        ensureEntity(entity);
+
+        if (e.getType() == NetworkSimulator.TIMERINTERRUPT)
+        {
+            timerHandle[entity] = handle;
+            timer[entity] = e;
+        }
+        else if (e.getType() == NetworkSimulator.FROMLAYER3)
+        {
+            pendingArrivals[entity]++;
+            if (e.getTime() > lastArrival[entity])
+            {
+                lastArrival[entity] = e.getTime();
+            }
+        }
+    }
+
+    // True if the event queued under this handle has not been cancelled
+    boolean isLive(Event e, long handle)
+    {
+        if (e.getType() != NetworkSimulator.TIMERINTERRUPT)
+        {
+            return true;
+        }
+        int entity = e.getEntity();
+        return (entity < 0) || (entity >= timerHandle.length) ||
+               (timerHandle[entity] == handle);
+    }
+
+    // Record a live event leaving the head of the list
+    void removed(Event e)
+    {
+        int entity = e.getEntity();
+        if ((entity < 0) || (entity >= timerHandle.length))
+        {
+            return;
+        }
+
+        if (e.getType() == NetworkSimulator.TIMERINTERRUPT)
+        {
+            timerHandle[entity] = NONE;
+            timer[entity] = null;
+        }
+        else if (e.getType() == NetworkSimulator.FROMLAYER3)
+        {
+            if (--pendingArrivals[entity] == 0)
+            {
+                lastArrival[entity] = 0;
+            }
+        }
+    }
+
+    // Record a tombstone leaving the list
+    void discarded()
+    {
+        tombstones--;
+    }
+
+    Event cancelTimer(int entity)
+    {
+        if ((entity < 0) || (entity >= timerHandle.length) ||
+            (timerHandle[entity] == NONE))
+        {
+            return null;
+        }
+
+        Event cancelled = timer[entity];
+        timerHandle[entity] = NONE;
+        timer[entity] = null;
+        tombstones++;
+        return cancelled;
+    }
+
+    double getLastPacketTime(int entityTo)
+    {
+        if ((entityTo < 0) || (entityTo >= lastArrival.length))
+        {
+            return 0;
+        }
+        return lastArrival[entityTo];
+    }
+
+    int tombstones()
+    {
+        return tombstones;
+    }
+
+    void clearTombstones()
+    {
+        tombstones = 0;
+    }
+
+    private void ensureEntity(int entity)
+    {
+        if (entity < timerHandle.length)
+        {
+            return;
+        }
+
+        int n = Math.max(entity + 1, timerHandle.length * 2);
+        int old = timerHandle.length;
+        timerHandle = Arrays.copyOf(timerHandle, n);
+        Arrays.fill(timerHandle, old, n, NONE);
+        timer = Arrays.copyOf(timer, n);
+        lastArrival = Arrays.copyOf(lastArrival, n);
+        pendingArrivals = Arrays.copyOf(pendingArrivals, n);
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * Looks up EventList implementations by the short names used on launcher
+ * command lines.
+ */
+public class EventLists {
+    public static final String NAMES = "vector, heap, calendar, store";
+
+    private EventLists() {
+    }
+
+    public static EventList create(String name) {
+        switch (name) {
+            case "vector":
+                return new EventListImpl();
+            case "heap":
+                return new HeapEventList();
+            case "calendar":
+                return new CalendarEventList();
+            case "store":
+                return new EventStore();
+            default:
+                throw new IllegalArgumentException("Unknown event list: " + name
+                        + " (expected one of " + NAMES + ")");
+        }
+    }
+}
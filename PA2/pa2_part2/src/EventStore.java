@@ -0,0 +1,369 @@
+import java.util.Arrays;
+
+// Struct-of-arrays event list.  Each pending event occupies a slot in
+// parallel primitive arrays (time, insertion order, type, entity) plus a
+// packet reference, and slots are recycled through a free list.  The
+// ordering is a binary heap of slot numbers keyed on (time, insertion
+// order), with each slot remembering its heap position so a timer can be
+// pulled out directly.
+//
+// NetworkSimulator drives it through the slot methods (schedule,
+// removeNextSlot, release and friends), which allocate nothing once the
+// arrays have grown to the working-set size.  The EventList methods are
+// kept for compatibility and hand out Event views built from a slot.
+public class EventStore implements EventList
+{
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int NONE = -1;
+
+    private double[] times;
+    private long[] order;
+    private int[] types;
+    private int[] entities;
+    private Packet[] packets;
+    private int[] heapPos;
+    private int[] nextFree;
+    private int freeHead;
+    private int capacity;
+
+    private int[] heap;
+    private int size;
+    private long nextOrder;
+
+    private int[] timerSlot;
+    private double[] lastArrival;
+    private int[] pendingArrivals;
+
+    public EventStore()
+    {
+        capacity = 0;
+        freeHead = NONE;
+        times = new double[0];
+        order = new long[0];
+        types = new int[0];
+        entities = new int[0];
+        packets = new Packet[0];
+        heapPos = new int[0];
+        nextFree = new int[0];
+        heap = new int[0];
+        grow(INITIAL_CAPACITY);
+
+        size = 0;
+        nextOrder = 0;
+
+        timerSlot = new int[2];
+        Arrays.fill(timerSlot, NONE);
+        lastArrival = new double[2];
+        pendingArrivals = new int[2];
+    }
+
+    // Queue an event and return its slot.  The packet is stored as is,
+    // so the caller must not modify it afterwards.
+    public int schedule(double time, int type, int entity, Packet packet)
+    {
+        if (freeHead == NONE)
+        {
+            grow(capacity * 2);
+        }
+
+        int slot = freeHead;
+        freeHead = nextFree[slot];
+
+        times[slot] = time;
+        order[slot] = nextOrder++;
+        types[slot] = type;
+        entities[slot] = entity;
+        packets[slot] = packet;
+
+        heap[size] = slot;
+        heapPos[slot] = size;
+        size++;
+        siftUp(size - 1);
+
+        if (entity >= 0)
+        {
+            ensureEntity(entity);
+            if (type == NetworkSimulator.TIMERINTERRUPT)
+            {
+                timerSlot[entity] = slot;
+            }
+            else if (type == NetworkSimulator.FROMLAYER3)
+            {
+                pendingArrivals[entity]++;
+                if (time > lastArrival[entity])
+                {
+                    lastArrival[entity] = time;
+                }
+            }
+        }
+
+        return slot;
+    }
+
+    // Take the earliest event off the queue.  Its fields stay readable
+    // until the slot is handed back with release().
+    public int removeNextSlot()
+    {
+        if (size == 0)
+        {
+            return NONE;
+        }
+
+        int slot = heap[0];
+        unlink(slot);
+        return slot;
+    }
+
+    public void release(int slot)
+    {
+        packets[slot] = null;
+        nextFree[slot] = freeHead;
+        freeHead = slot;
+    }
+
+    public double timeOf(int slot)
+    {
+        return times[slot];
+    }
+
+    public int typeOf(int slot)
+    {
+        return types[slot];
+    }
+
+    public int entityOf(int slot)
+    {
+        return entities[slot];
+    }
+
+    public Packet packetOf(int slot)
+    {
+        return packets[slot];
+    }
+
+    // Drop the entity's pending timer; false if it had none
+    public boolean cancelTimer(int entity)
+    {
+        int slot = pendingTimer(entity);
+        if (slot == NONE)
+        {
+            return false;
+        }
+
+        unlink(slot);
+        release(slot);
+        return true;
+    }
+
+    // Move the entity's pending timer behind everything already queued
+    // for the same time, as removing and re-adding it would; false if it
+    // had none
+    public boolean requeueTimer(int entity)
+    {
+        int slot = pendingTimer(entity);
+        if (slot == NONE)
+        {
+            return false;
+        }
+
+        order[slot] = nextOrder++;
+        siftDown(heapPos[slot]);
+        return true;
+    }
+
+    public boolean add(Event e)
+    {
+        schedule(e.getTime(), e.getType(), e.getEntity(), e.getPacket());
+        return true;
+    }
+
+    public Event removeNext()
+    {
+        int slot = removeNextSlot();
+        if (slot == NONE)
+        {
+            return null;
+        }
+
+        Event e = view(slot);
+        release(slot);
+        return e;
+    }
+
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++)
+        {
+            if (i > 0)
+            {
+                sb.append(", ");
+            }
+            sb.append(view(heap[i]));
+        }
+        return sb.append("]").toString();
+    }
+
+    public Event removeTimer(int entity)
+    {
+        int slot = pendingTimer(entity);
+        if (slot == NONE)
+        {
+            return null;
+        }
+
+        unlink(slot);
+        Event e = view(slot);
+        release(slot);
+        return e;
+    }
+
+    public double getLastPacketTime(int entityTo)
+    {
+        if ((entityTo < 0) || (entityTo >= lastArrival.length))
+        {
+            return 0;
+        }
+        return lastArrival[entityTo];
+    }
+
+    private Event view(int slot)
+    {
+        return Event.wrap(times[slot], types[slot], entities[slot],
+                          packets[slot]);
+    }
+
+    private int pendingTimer(int entity)
+    {
+        if ((entity < 0) || (entity >= timerSlot.length))
+        {
+            return NONE;
+        }
+        return timerSlot[entity];
+    }
+
+    // Take a queued slot out of the heap and the secondary indices
+    private void unlink(int slot)
+    {
+        int pos = heapPos[slot];
+        size--;
+        if (pos != size)
+        {
+            int last = heap[size];
+            heap[pos] = last;
+            heapPos[last] = pos;
+            siftDown(pos);
+            siftUp(heapPos[last]);
+        }
+        heapPos[slot] = NONE;
+
+        int entity = entities[slot];
+        if ((entity < 0) || (entity >= timerSlot.length))
+        {
+            return;
+        }
+        if (types[slot] == NetworkSimulator.TIMERINTERRUPT)
+        {
+            if (timerSlot[entity] == slot)
+            {
+                timerSlot[entity] = NONE;
+            }
+        }
+        else if (types[slot] == NetworkSimulator.FROMLAYER3)
+        {
+            if (--pendingArrivals[entity] == 0)
+            {
+                lastArrival[entity] = 0;
+            }
+        }
+    }
+
+    private boolean less(int a, int b)
+    {
+        if (times[a] != times[b])
+        {
+            return times[a] < times[b];
+        }
+        return order[a] < order[b];
+    }
+
+    private void siftUp(int i)
+    {
+        int slot = heap[i];
+        while (i > 0)
+        {
+            int parent = (i - 1) >>> 1;
+            if (!less(slot, heap[parent]))
+            {
+                break;
+            }
+            heap[i] = heap[parent];
+            heapPos[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = slot;
+        heapPos[slot] = i;
+    }
+
+    private void siftDown(int i)
+    {
+        int slot = heap[i];
+        while (true)
+        {
+            int child = 2 * i + 1;
+            if (child >= size)
+            {
+                break;
+            }
+            if ((child + 1 < size) && less(heap[child + 1], heap[child]))
+            {
+                child++;
+            }
+            if (!less(heap[child], slot))
+            {
+                break;
+            }
+            heap[i] = heap[child];
+            heapPos[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = slot;
+        heapPos[slot] = i;
+    }
+
+    private void grow(int newCapacity)
+    {
+        times = Arrays.copyOf(times, newCapacity);
+        order = Arrays.copyOf(order, newCapacity);
+        types = Arrays.copyOf(types, newCapacity);
+        entities = Arrays.copyOf(entities, newCapacity);
+        packets = Arrays.copyOf(packets, newCapacity);
+        heapPos = Arrays.copyOf(heapPos, newCapacity);
+        nextFree = Arrays.copyOf(nextFree, newCapacity);
+        heap = Arrays.copyOf(heap, newCapacity);
+
+        // Thread the new slots onto the free list, lowest first
+        for (int slot = newCapacity - 1; slot >= capacity; slot--)
+        {
+            heapPos[slot] = NONE;
+            nextFree[slot] = freeHead;
+            freeHead = slot;
+        }
+        capacity = newCapacity;
+    }
+
+    private void ensureEntity(int entity)
+    {
+        if (entity < timerSlot.length)
+        {
+            return;
+        }
+
+        int n = Math.max(entity + 1, timerSlot.length * 2);
+        int old = timerSlot.length;
+        timerSlot = Arrays.copyOf(timerSlot, n);
+        Arrays.fill(timerSlot, old, n, NONE);
+        lastArrival = Arrays.copyOf(lastArrival, n);
+        pendingArrivals = Arrays.copyOf(pendingArrivals, n);
+    }
+}
@@ -0,0 +1,53 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// No congestion control: the window is always the sender's WindowSize.
+public class FixedWindow implements CongestionControl
+{
+    private final int size;
+
+    public FixedWindow(int size)
+    {
+        this.size = size;
+    }
+
+    public String getName()
+    {
+        return "none";
+    }
+
+    public double window()
+    {
+        return size;
+    }
+
+    public double threshold()
+    {
+        return size;
+    }
+
+    public void onAck(double now, int acked, int flight)
+    {
+    }
+
+    public void onDuplicateAck(double now, int flight)
+    {
+    }
+
+    public void onFastRetransmit(double now, int flight)
+    {
+    }
+
+    public void onTimeout(double now, int flight)
+    {
+    }
+
+    public void save(DataOutputStream cp)
+    {
+    }
+
+    public void restore(DataInputStream cp)
+    {
+    }
+}
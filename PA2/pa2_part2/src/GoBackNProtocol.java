@@ -0,0 +1,228 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * Go-Back-N.
+ *
+ * A keeps up to WindowSize unacknowledged packets and one timer for the
+ * oldest of them; when it runs out every unacknowledged packet is sent
+ * again.  B accepts only the next packet in order and answers every
+ * packet with a cumulative ACK for the last one it delivered, so packets
+ * after a loss are discarded and resent.  A timeout resends the whole
+ * window even when the congestion window is smaller.
+ *
+ * This replaces the separate pa2_part1 simulator.  That copy resent only
+ * the oldest packet on a timeout or duplicate ACK and buffered
+ * out-of-order packets at B, which made it closer to Selective Repeat
+ * than Go-Back-N; this is the textbook protocol.
+ */
+public class GoBackNProtocol extends TransportProtocol {
+    // Sender (A) state variables
+    private int base; // Sequence number of the oldest unacknowledged packet
+    private int nextSeqNum; // Next sequence number to use
+    private Map<Integer, Packet> window; // Map of sequence number to Packet
+    private Queue<Message> bufferA; // Buffer for A_output
+    private Map<Integer, Double> packetSendTime;
+    private Map<Integer, Boolean> isPacketRetransmiision;
+
+    // Receiver (B) state variables
+    private int expectedSeqNum; // Next expected sequence number
+
+    // Trace statements
+    private static final int T_BUFFERED = Trace.define(2, Trace.SENDER,
+            "Adding message to buffer, current size:{0}");
+    private static final int T_SENT = Trace.define(2, Trace.SENDER,
+            "A_output: Sent packet {0} current base {1}");
+    private static final int T_CORRUPT_ACK = Trace.define(1, Trace.SENDER,
+            "A_input: Received corrupted ACK.");
+    private static final int T_ACK = Trace.define(2, Trace.SENDER,
+            "A_input: Received ACK {0}");
+    private static final int T_WINDOW_SHIFT = Trace.define(2, Trace.SENDER,
+            "A_input: Received ACK {0} make window shift {1} current base: {2}");
+    private static final int T_TIMEOUT = Trace.define(1, Trace.TIMER,
+            "A_timerInterrupt: Timer expired. Retransmitting {0} unacknowledged packets.");
+    private static final int T_TIMEOUT_RETX = Trace.define(2, Trace.TIMER,
+            "A_timerInterrupt: Retransmitted packet {0} current base: {1}");
+    private static final int T_B_CORRUPT = Trace.define(1, Trace.RECEIVER,
+            "B_input: Received corrupted packet.");
+    private static final int T_B_DELIVERED = Trace.define(2, Trace.RECEIVER,
+            "B_input: Delivered packet {0} to layer5 and sent ACK.");
+    private static final int T_B_DISCARDED = Trace.define(2, Trace.RECEIVER,
+            "B_input: Discarded packet {0}, expecting {1}. Resent ACK.");
+    private static final int T_B_ACK = Trace.define(2, Trace.RECEIVER,
+            "B_input: Sent ACK {0}");
+
+    @Override
+    public String getName() {
+        return "gbn";
+    }
+
+    // Initialize sender (A)
+    protected void aInit() {
+        base = FirstSeqNo;
+        nextSeqNum = FirstSeqNo;
+        window = new HashMap<>();
+        bufferA = new ArrayDeque<>();
+        packetSendTime = new HashMap<>();
+        isPacketRetransmiision = new HashMap<>();
+    }
+
+    // Initialize receiver (B)
+    protected void bInit() {
+        expectedSeqNum = FirstSeqNo;
+    }
+
+    // Sender: Handle new message from layer5
+    protected void aOutput(Message message) {
+        bufferA.offer(message);
+        trace().log(T_BUFFERED, bufferA.size());
+        sendPackets();
+    }
+
+    // Number of packets sent and not yet acknowledged
+    private int outstanding() {
+        return (nextSeqNum - base + LimitSeqNo) % LimitSeqNo;
+    }
+
+    // Sender: Send buffered messages while the window has room
+    private void sendPackets() {
+        while (outstanding() < sendWindow() && !bufferA.isEmpty()) {
+            Packet pkt = makePacket(nextSeqNum, bufferA.poll());
+            window.put(nextSeqNum, pkt);
+            packetSendTime.put(nextSeqNum, getTime());
+            isPacketRetransmiision.put(nextSeqNum, true);
+            toLayer3(A, pkt);
+            originalPackets++;
+            trace().log(T_SENT, pkt.getSeqnum(), base);
+
+            // The timer runs for the oldest unacknowledged packet
+            if (base == nextSeqNum) {
+                startTimer(A, rto());
+            }
+            nextSeqNum = (nextSeqNum + 1) % LimitSeqNo;
+        }
+    }
+
+    // Sender: Handle incoming ACK packet
+    protected void aInput(Packet packet) {
+        if (isCorrupted(packet)) {
+            corruptedPackets++;
+            trace().log(T_CORRUPT_ACK);
+            return;
+        }
+
+        int ackNum = packet.getAcknum();
+        trace().log(T_ACK, ackNum);
+        int move = (ackNum - base + LimitSeqNo) % LimitSeqNo + 1;
+        if (move > outstanding()) {
+            // A duplicate: nothing new is acknowledged
+            congestionDuplicateAck(outstanding());
+            return;
+        }
+
+        // Everything up to ackNum has arrived
+        for (int i = 0; i < move; i++) {
+            int seq = (base + i) % LimitSeqNo;
+            window.remove(seq);
+            Double sent = packetSendTime.remove(seq);
+            Boolean original = isPacketRetransmiision.remove(seq);
+            if (seq == ackNum) {
+                sampleRoundTrip(sent, original);
+                // B ACKs each packet it delivers as it arrives
+                if (original) {
+                    sampleTimeout(sent);
+                }
+            }
+        }
+        base = (ackNum + 1) % LimitSeqNo;
+        trace().log(T_WINDOW_SHIFT, ackNum, move, base);
+        congestionAck(move, outstanding());
+
+        stopTimer(A);
+        if (base != nextSeqNum) {
+            startTimer(A, rto());
+        }
+        sendPackets();
+    }
+
+    // Sender: Handle timer interrupt by resending the whole window
+    protected void aTimerInterrupt() {
+        int n = outstanding();
+        trace().log(T_TIMEOUT, n);
+        congestionTimeout(n);
+        backOffTimeout();
+        for (int i = 0; i < n; i++) {
+            int seq = (base + i) % LimitSeqNo;
+            toLayer3(A, window.get(seq));
+            retransmissions++;
+            isPacketRetransmiision.put(seq, false);
+            trace().log(T_TIMEOUT_RETX, seq, base);
+        }
+        if (n > 0) {
+            startTimer(A, rto());
+        }
+    }
+
+    // Receiver: Handle incoming data packet
+    protected void bInput(Packet packet) {
+        if (isCorrupted(packet)) {
+            corruptedPacketsB++;
+            trace().log(T_B_CORRUPT);
+            return;
+        }
+
+        int seqNum = packet.getSeqnum();
+        if (seqNum == expectedSeqNum) {
+            deliver(packet);
+            trace().log(T_B_DELIVERED, seqNum);
+            expectedSeqNum = (expectedSeqNum + 1) % LimitSeqNo;
+        } else {
+            trace().log(T_B_DISCARDED, seqNum, expectedSeqNum);
+        }
+        sendACK((expectedSeqNum - 1 + LimitSeqNo) % LimitSeqNo);
+        ackSent++;
+    }
+
+    // Receiver: Send ACK packet to sender
+    private void sendACK(int ackNum) {
+        int checksum = calculateChecksum(0, ackNum, "");
+        toLayer3(B, new Packet(0, ackNum, checksum, ""));
+        trace().log(T_B_ACK, ackNum);
+    }
+
+    @Override
+    protected void saveState(DataOutputStream cp) throws IOException {
+        cp.writeInt(base);
+        cp.writeInt(nextSeqNum);
+        writePacketMap(cp, window);
+        cp.writeInt(bufferA.size());
+        for (Message m : bufferA) {
+            Checkpoint.writeMessage(cp, m);
+        }
+        for (int i = 0; i < outstanding(); i++) {
+            int seq = (base + i) % LimitSeqNo;
+            cp.writeDouble(packetSendTime.get(seq));
+            cp.writeBoolean(isPacketRetransmiision.get(seq));
+        }
+        cp.writeInt(expectedSeqNum);
+    }
+
+    @Override
+    protected void restoreState(DataInputStream cp) throws IOException {
+        base = cp.readInt();
+        nextSeqNum = cp.readInt();
+        window = readPacketMap(cp);
+        bufferA = new ArrayDeque<>();
+        for (int i = cp.readInt(); i > 0; i--) {
+            bufferA.offer(Checkpoint.readMessage(cp));
+        }
+        packetSendTime = new HashMap<>();
+        isPacketRetransmiision = new HashMap<>();
+        for (int i = 0; i < outstanding(); i++) {
+            int seq = (base + i) % LimitSeqNo;
+            packetSendTime.put(seq, cp.readDouble());
+            isPacketRetransmiision.put(seq, cp.readBoolean());
+        }
+        expectedSeqNum = cp.readInt();
+    }
+}
@@ -0,0 +1,230 @@
+import java.util.Arrays;
+
+// Binary min-heap of events keyed on (time, insertion order).  Keys are
+// kept in primitive arrays next to the events so sifting never has to
+// dereference an Event.  Equal timestamps come out in insertion order,
+// which is the same order EventListImpl's linear scan produces.
+//
+// Timers and last-arrival times are looked up through an EventIndex, so
+// removeTimer() and getLastPacketTime() are O(1).  Cancelled timers are
+// left in the heap and skipped by removeNext(); the heap is rebuilt once
+// they make up half of it.
+public class HeapEventList implements EventList
+{
+    private static final int INITIAL_CAPACITY = 64;
+
+    private double[] times;
+    private long[] order;
+    private Event[] events;
+    private int size;
+    private long nextOrder;
+    private EventIndex index;
+
+    public HeapEventList()
+    {
+        times = new double[INITIAL_CAPACITY];
+        order = new long[INITIAL_CAPACITY];
+        events = new Event[INITIAL_CAPACITY];
+        size = 0;
+        nextOrder = 0;
+        index = new EventIndex();
+    }
+
+    public boolean add(Event e)
+    {
+        if (size == events.length)
+        {
+            grow();
+        }
+
+        times[size] = e.getTime();
+        order[size] = nextOrder++;
+        events[size] = e;
+        index.added(e, order[size]);
+        siftUp(size);
+        size++;
+        return true;
+    }
+
+    public Event removeNext()
+    {
+        while (size > 0)
+        {
+            long handle = order[0];
+            Event next = removeAt(0);
+            if (index.isLive(next, handle))
+            {
+                index.removed(next);
+                return next;
+            }
+            index.discarded();
+        }
+
+        return null;
+    }
+
+    // Time of the event removeNext() would return, or positive infinity
+    // if the list is empty
+    public double peekTime()
+    {
+        while ((size > 0) && !index.isLive(events[0], order[0]))
+        {
+            removeAt(0);
+            index.discarded();
+        }
+        return (size > 0) ? times[0] : Double.POSITIVE_INFINITY;
+    }
+
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++)
+        {
+            if (!index.isLive(events[i], order[i]))
+            {
+                continue;
+            }
+            if (sb.length() > 1)
+            {
+                sb.append(", ");
+            }
+            sb.append(events[i]);
+        }
+        return sb.append("]").toString();
+    }
+
+    public Event removeTimer(int entity)
+    {
+        Event timer = index.cancelTimer(entity);
+        if ((timer != null) && (index.tombstones() > size / 2))
+        {
+            compact();
+        }
+        return timer;
+    }
+
+    public double getLastPacketTime(int entityTo)
+    {
+        return index.getLastPacketTime(entityTo);
+    }
+
+    // Drop every tombstone and restore the heap property bottom-up
+    private void compact()
+    {
+        int live = 0;
+        for (int i = 0; i < size; i++)
+        {
+            if (index.isLive(events[i], order[i]))
+            {
+                move(i, live++);
+            }
+        }
+        Arrays.fill(events, live, size, null);
+        size = live;
+        index.clearTombstones();
+
+        for (int i = (size >>> 1) - 1; i >= 0; i--)
+        {
+            siftDown(i);
+        }
+    }
+
+    private Event removeAt(int index)
+    {
+        Event removed = events[index];
+        size--;
+
+        if (index != size)
+        {
+            move(size, index);
+            events[size] = null;
+            siftDown(index);
+            siftUp(index);
+        }
+        else
+        {
+            events[size] = null;
+        }
+
+        return removed;
+    }
+
+    private boolean less(int i, int j)
+    {
+        if (times[i] != times[j])
+        {
+            return times[i] < times[j];
+        }
+        return order[i] < order[j];
+    }
+
+    private void siftUp(int i)
+    {
+        while (i > 0)
+        {
+            int parent = (i - 1) >>> 1;
+            if (!less(i, parent))
+            {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i)
+    {
+        while (true)
+        {
+            int left = 2 * i + 1;
+            if (left >= size)
+            {
+                break;
+            }
+
+            int smallest = left;
+            int right = left + 1;
+            if ((right < size) && less(right, left))
+            {
+                smallest = right;
+            }
+
+            if (!less(smallest, i))
+            {
+                break;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void move(int from, int to)
+    {
+        times[to] = times[from];
+        order[to] = order[from];
+        events[to] = events[from];
+    }
+
+    private void swap(int i, int j)
+    {
+        double t = times[i];
+        times[i] = times[j];
+        times[j] = t;
+
+        long o = order[i];
+        order[i] = order[j];
+        order[j] = o;
+
+        Event e = events[i];
+        events[i] = events[j];
+        events[j] = e;
+    }
+
+    private void grow()
+    {
+        int capacity = events.length * 2;
+        times = Arrays.copyOf(times, capacity);
+        order = Arrays.copyOf(order, capacity);
+        events = Arrays.copyOf(events, capacity);
+    }
+}
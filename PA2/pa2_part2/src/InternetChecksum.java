@@ -0,0 +1,61 @@
+// RFC 1071 Internet checksum: the one's complement of the one's
+// complement sum of 16-bit big-endian words.  The words are seqnum and
+// acknum (two each) followed by the payload bytes, padded with a zero
+// byte when the payload length is odd.
+public class InternetChecksum implements PacketChecksum
+{
+    public int compute(int seqnum, int acknum, String payload)
+    {
+        int sum = header(seqnum, acknum);
+        if (payload != null)
+        {
+            int n = payload.length();
+            int i = 0;
+            for (; i + 1 < n; i += 2)
+            {
+                sum += ((payload.charAt(i) & 0xFF) << 8) |
+                       (payload.charAt(i + 1) & 0xFF);
+            }
+            if (i < n)
+            {
+                sum += (payload.charAt(i) & 0xFF) << 8;
+            }
+        }
+        return fold(sum);
+    }
+
+    public int compute(int seqnum, int acknum, byte[] payload)
+    {
+        int sum = header(seqnum, acknum);
+        if (payload != null)
+        {
+            int n = payload.length;
+            int i = 0;
+            for (; i + 1 < n; i += 2)
+            {
+                sum += ((payload[i] & 0xFF) << 8) | (payload[i + 1] & 0xFF);
+            }
+            if (i < n)
+            {
+                sum += (payload[i] & 0xFF) << 8;
+            }
+        }
+        return fold(sum);
+    }
+
+    private static int header(int seqnum, int acknum)
+    {
+        return (seqnum >>> 16) + (seqnum & 0xFFFF) +
+               (acknum >>> 16) + (acknum & 0xFFFF);
+    }
+
+    // Add the carries back in and complement
+    private static int fold(int sum)
+    {
+        while ((sum >>> 16) != 0)
+        {
+            sum = (sum & 0xFFFF) + (sum >>> 16);
+        }
+        return ~sum & 0xFFFF;
+    }
+}
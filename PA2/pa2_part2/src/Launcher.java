@@ -0,0 +1,341 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Non-interactive front end to StudentNetworkSimulator.
+ *
+ * Takes the eight Project parameters, output paths and implementation
+ * choices from the command line ({@code --key value} or
+ * {@code --key=value}) and/or a properties file given with
+ * {@code --config FILE}; command-line values win.  Nothing is read from
+ * stdin.  After the run one JSON line summarising the configuration and
+ * statistics is printed to stdout, and the exit status is 0 on success,
+ * 1 if the run failed and 2 for a bad configuration.
+ */
+public class Launcher {
+    private static final String[][] OPTIONS = {
+            {"nsim", "10", "number of messages to simulate (> 0)"},
+            {"loss", "0.0", "packet loss probability"},
+            {"corrupt", "0.0", "packet corruption probability"},
+            {"delay", "1000", "average time between messages from layer 5 (> 0)"},
+            {"window", "8", "window size (> 5)"},
+            {"timeout", "15.0", "retransmission timeout (> 0)"},
+            {"trace", "0", "trace level (>= 0)"},
+            {"seed", "1", "random seed (> 0)"},
+            {"protocol", "sack", "transport protocol: " + TransportProtocols.NAMES},
+            {"congestion", "none", "congestion control: " + CongestionControls.NAMES},
+            {"cwnd-log", "", "file for the congestion window over time; empty for none"},
+            {"rto", "fixed", "retransmission timeout: fixed (the timeout option), adaptive (SRTT + 4 RTTVAR starting from it)"},
+            {"rto-min", String.valueOf(RetransmissionTimeout.DEFAULT_MIN), "smallest adaptive timeout (> 0)"},
+            {"rto-max", String.valueOf(RetransmissionTimeout.DEFAULT_MAX), "largest adaptive timeout (> 0)"},
+            {"random", "osi", "random numbers: osi (the original generator), split (xoshiro256** streams)"},
+            {"log", "", "file for the simulation trace; '-' for stderr, empty to discard"},
+            {"delivery-file", "OutputFile", "file for layer 5 deliveries; empty to discard"},
+            {"delivery-mapped", "false", "write the delivery file through a memory mapping"},
+            {"event-list", "vector", "event list: " + EventLists.NAMES},
+            {"checksum", "charsum", "checksum: charsum, internet, crc32c"},
+            {"binary", "false", "carry payloads as byte arrays"},
+            {"topology", "", "topology file (see Topology.parse); empty for A and B joined directly"},
+            {"link-rate", "0", "rate of the A-B links in bytes per time unit; 0 for no transmission time"},
+            {"link-delay", "1", "propagation delay of the A-B links"},
+            {"link-jitter", "9", "jitter of the A-B links"},
+            {"jitter", "uniform", "jitter distribution of the A-B links: uniform, exponential"},
+            {"workers", "1", "worker threads; more than 1 uses the parallel engine"},
+            {"checkpoint", "", "file to save checkpoints to; empty for none"},
+            {"checkpoint-interval", "10000", "simulated time between checkpoints (> 0)"},
+            {"resume", "", "checkpoint file to continue from; empty to start afresh"},
+    };
+
+    static class ConfigException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        ConfigException(String message) {
+            super(message);
+        }
+    }
+
+    private final Properties config;
+
+    public Launcher(Properties config) {
+        this.config = config;
+    }
+
+    private String get(String key) {
+        return config.getProperty(key);
+    }
+
+    private int getInt(String key, int min) throws ConfigException {
+        try {
+            int v = Integer.parseInt(get(key).trim());
+            if (v < min) {
+                throw new ConfigException(key + " must be at least " + min);
+            }
+            return v;
+        } catch (NumberFormatException nfe) {
+            throw new ConfigException(key + " is not an integer: " + get(key));
+        }
+    }
+
+    private double getDouble(String key, boolean positive) throws ConfigException {
+        try {
+            double v = Double.parseDouble(get(key).trim());
+            if (positive ? v <= 0 : v < 0) {
+                throw new ConfigException(key + " must be "
+                        + (positive ? "> 0" : ">= 0"));
+            }
+            return v;
+        } catch (NumberFormatException nfe) {
+            throw new ConfigException(key + " is not a number: " + get(key));
+        }
+    }
+
+    private static PacketChecksum checksum(String name) throws ConfigException {
+        switch (name) {
+            case "charsum":
+                return new CharSumChecksum();
+            case "internet":
+                return new InternetChecksum();
+            case "crc32c":
+                return new Crc32cChecksum();
+            default:
+                throw new ConfigException("Unknown checksum: " + name);
+        }
+    }
+
+    private static RandomSource random(String name, int seed) throws ConfigException {
+        switch (name) {
+            case "osi":
+                return new OSIRandom(seed);
+            case "split":
+                return new SplitRandom(seed);
+            default:
+                throw new ConfigException("Unknown random source: " + name);
+        }
+    }
+
+    /**
+     * Build the simulator described by the configuration, ready to run.
+     */
+    public StudentNetworkSimulator build(PrintStream log) throws ConfigException {
+        int nsim = getInt("nsim", 1);
+        double loss = getDouble("loss", false);
+        double corrupt = getDouble("corrupt", false);
+        double delay = getDouble("delay", true);
+        int window = getInt("window", 6);
+        double timeout = getDouble("timeout", true);
+        int trace = getInt("trace", 0);
+        int seed = getInt("seed", 1);
+
+        EventList events;
+        TransportProtocol protocol;
+        try {
+            events = EventLists.create(get("event-list"));
+            protocol = TransportProtocols.create(get("protocol"));
+        } catch (IllegalArgumentException iae) {
+            throw new ConfigException(iae.getMessage());
+        }
+
+        StudentNetworkSimulator simulator = new StudentNetworkSimulator(nsim,
+                loss, corrupt, delay, trace, seed, window, timeout, events, protocol);
+        simulator.setRandomSource(random(get("random"), seed));
+        try {
+            simulator.setCongestionControl(get("congestion"));
+            simulator.setRetransmissionTimeout(get("rto"));
+            simulator.setTimeoutBounds(getDouble("rto-min", true), getDouble("rto-max", true));
+        } catch (IllegalArgumentException iae) {
+            throw new ConfigException(iae.getMessage());
+        }
+        simulator.setChecksumStrategy(checksum(get("checksum")));
+        simulator.setBinaryPayloads(Boolean.parseBoolean(get("binary")));
+        String deliveries = get("delivery-file");
+        simulator.setDeliveryFile(deliveries.isEmpty() ? null : deliveries,
+                Boolean.parseBoolean(get("delivery-mapped")));
+        simulator.setOutput(log);
+        simulator.setWorkers(getInt("workers", 1));
+        String topology = get("topology");
+        if (topology.isEmpty()) {
+            simulator.setTopology(linkModel(loss, corrupt));
+        } else {
+            try (Reader in = new FileReader(topology)) {
+                simulator.setTopology(Topology.parse(in));
+            } catch (IOException ioe) {
+                throw new ConfigException("Cannot read topology " + topology + ": " + ioe.getMessage());
+            }
+        }
+        String checkpoint = get("checkpoint");
+        if (!checkpoint.isEmpty()) {
+            simulator.setCheckpoint(checkpoint, getDouble("checkpoint-interval", true));
+        }
+        String resume = get("resume");
+        if (!resume.isEmpty()) {
+            try {
+                simulator.resume(resume);
+            } catch (IOException ioe) {
+                throw new ConfigException("Cannot resume from " + resume + ": " + ioe.getMessage());
+            }
+        }
+        return simulator;
+    }
+
+    /**
+     * A and B joined as the link-* options describe; the defaults give
+     * the original channel.
+     */
+    private Topology linkModel(double loss, double corrupt) throws ConfigException {
+        double rate = getDouble("link-rate", false);
+        double delay = getDouble("link-delay", false);
+        double jitter = getDouble("link-jitter", false);
+        Topology.Jitter distribution;
+        try {
+            distribution = Topology.Jitter.valueOf(get("jitter").toUpperCase());
+        } catch (IllegalArgumentException iae) {
+            throw new ConfigException("Unknown jitter distribution: " + get("jitter"));
+        }
+        return Topology.twoHost(loss, corrupt, rate, delay, jitter, distribution);
+    }
+
+    private PrintStream openWindowLog() throws IOException {
+        String name = get("cwnd-log");
+        return name.isEmpty() ? null : new PrintStream(
+                new BufferedOutputStream(new FileOutputStream(name)));
+    }
+
+    private PrintStream openLog() throws IOException {
+        String name = get("log");
+        if (name.isEmpty()) {
+            return new PrintStream(OutputStream.nullOutputStream());
+        } else if (name.equals("-")) {
+            return System.err;
+        }
+        return new PrintStream(new BufferedOutputStream(new FileOutputStream(name)));
+    }
+
+    private static String json(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private String summary(SimulationResult r, long wallMillis) {
+        StringBuilder sb = new StringBuilder("{\"status\":\"ok\"");
+        for (String[] option : OPTIONS) {
+            sb.append(",").append(json(option[0])).append(":").append(json(get(option[0])));
+        }
+        sb.append(",\"end_time\":").append(r.getEndTime());
+        sb.append(",\"original\":").append(r.getOriginalPackets());
+        sb.append(",\"retransmissions\":").append(r.getRetransmissions());
+        sb.append(",\"delivered\":").append(r.getDelivered());
+        sb.append(",\"acks\":").append(r.getAckSent());
+        sb.append(",\"corrupted\":").append(r.getCorruptedPackets());
+        sb.append(",\"lost_ratio\":").append(number(r.getLostRatio()));
+        sb.append(",\"corrupted_ratio\":").append(number(r.getCorruptedRatio()));
+        sb.append(",\"avg_rtt\":").append(number(r.getAverageRTT()));
+        sb.append(",\"avg_comm_time\":").append(number(r.getAverageCommunicationTime()));
+        sb.append(",\"wall_ms\":").append(wallMillis);
+        return sb.append("}").toString();
+    }
+
+    // JSON has no NaN or infinities
+    private static String number(double d) {
+        return (Double.isNaN(d) || Double.isInfinite(d)) ? "null" : Double.toString(d);
+    }
+
+    private static void usage(PrintStream ps) {
+        ps.println("usage: java Launcher [--config FILE] [--key value | --key=value]...");
+        for (String[] option : OPTIONS) {
+            ps.println("  --" + option[0] + "  " + option[2]
+                    + " [" + option[1] + "]");
+        }
+    }
+
+    private static void fail(int status, String message) {
+        System.out.println("{\"status\":\"error\",\"message\":" + json(message) + "}");
+        System.exit(status);
+    }
+
+    /**
+     * Defaults, then the --config file, then the remaining arguments.
+     */
+    static Properties parse(String[] argv) throws ConfigException, IOException {
+        Properties defaults = new Properties();
+        for (String[] option : OPTIONS) {
+            defaults.setProperty(option[0], option[1]);
+        }
+        Properties config = new Properties(defaults);
+        Properties overrides = new Properties();
+
+        for (int i = 0; i < argv.length; i++) {
+            String arg = argv[i];
+            if (!arg.startsWith("--")) {
+                throw new ConfigException("Unexpected argument: " + arg);
+            }
+            String key;
+            String value;
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                key = arg.substring(2, eq);
+                value = arg.substring(eq + 1);
+            } else if (i + 1 < argv.length) {
+                key = arg.substring(2);
+                value = argv[++i];
+            } else {
+                throw new ConfigException("Missing value for " + arg);
+            }
+
+            if (key.equals("config")) {
+                try (Reader in = new FileReader(value)) {
+                    config.load(in);
+                }
+            } else if (defaults.getProperty(key) == null) {
+                throw new ConfigException("Unknown option: --" + key);
+            } else {
+                overrides.setProperty(key, value);
+            }
+        }
+
+        for (String key : config.stringPropertyNames()) {
+            if (defaults.getProperty(key) == null) {
+                throw new ConfigException("Unknown key in config file: " + key);
+            }
+        }
+        config.putAll(overrides);
+        return config;
+    }
+
+    public static void main(String[] argv) {
+        if (argv.length > 0 && (argv[0].equals("--help") || argv[0].equals("-h"))) {
+            usage(System.out);
+            return;
+        }
+
+        Launcher launcher = null;
+        StudentNetworkSimulator simulator = null;
+        PrintStream log = null;
+        PrintStream windowLog = null;
+        try {
+            launcher = new Launcher(parse(argv));
+            log = launcher.openLog();
+            simulator = launcher.build(log);
+            windowLog = launcher.openWindowLog();
+            simulator.setWindowLog(windowLog);
+        } catch (ConfigException ce) {
+            usage(System.err);
+            fail(2, ce.getMessage());
+        } catch (IOException ioe) {
+            fail(2, ioe.toString());
+        }
+
+        try {
+            long start = System.nanoTime();
+            simulator.runSimulator();
+            long wall = (System.nanoTime() - start) / 1000000;
+            if (log != System.err) {
+                log.close();
+            }
+            if (windowLog != null) {
+                windowLog.close();
+            }
+            System.out.println(launcher.summary(simulator.getResult(), wall));
+        } catch (RuntimeException re) {
+            fail(1, re.toString());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * A histogram of positive values with logarithmically sized buckets, for
+ * latency percentiles in constant space.
+ *
+ * Bucket i covers (lowest * g^(i-1), lowest * g^i] with g = 1 + 2 * error,
+ * so reporting a bucket's geometric middle is off by at most about error
+ * relative to any value in it.  Values at or below lowest and above
+ * highest are counted in two extra buckets and reported as the smallest
+ * and largest value seen.  The exact count, mean, deviation and extremes
+ * are kept alongside in a {@link RunningStats}.
+ */
+public class LogHistogram {
+    private final double lowest;
+    private final double logGrowth;
+    private final long[] counts;
+    private final RunningStats stats = new RunningStats();
+
+    public LogHistogram(double lowest, double highest, double error) {
+        if (!(lowest > 0) || !(highest > lowest) || !(error > 0)) {
+            throw new IllegalArgumentException("Need 0 < lowest < highest and error > 0");
+        }
+        this.lowest = lowest;
+        logGrowth = Math.log1p(2 * error);
+        counts = new long[(int) Math.ceil(Math.log(highest / lowest) / logGrowth) + 2];
+    }
+
+    /**
+     * Time-like values from 0.001 to 10^9 to within 1%.
+     */
+    public LogHistogram() {
+        this(1e-3, 1e9, 0.01);
+    }
+
+    public void add(double x) {
+        stats.add(x);
+        int i;
+        if (!(x > lowest)) {
+            i = 0;
+        } else {
+            i = 1 + (int) (Math.log(x / lowest) / logGrowth);
+            if (i >= counts.length - 1) {
+                i = counts.length - 1;
+            }
+        }
+        counts[i]++;
+    }
+
+    public RunningStats stats() {
+        return stats;
+    }
+
+    public long count() {
+        return stats.count();
+    }
+
+    /**
+     * The value below which p percent of the values fall, or NaN before
+     * any values.
+     */
+    public double percentile(double p) {
+        long n = stats.count();
+        if (n == 0) {
+            return Double.NaN;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                if (i == 0) {
+                    return stats.min();
+                } else if (i == counts.length - 1) {
+                    return stats.max();
+                }
+                double middle = lowest * Math.exp((i - 0.5) * logGrowth);
+                return Math.min(Math.max(middle, stats.min()), stats.max());
+            }
+        }
+        return stats.max();
+    }
+
+    /**
+     * count, mean, standard deviation and the usual percentiles on one
+     * line.
+     */
+    public String summary() {
+        return "count " + count() + ", mean " + stats.mean()
+                + ", std dev " + stats.standardDeviation()
+                + ", min " + stats.min() + ", p50 " + percentile(50)
+                + ", p90 " + percentile(90) + ", p99 " + percentile(99)
+                + ", max " + stats.max();
+    }
+
+    /**
+     * Only the non-empty buckets are written.
+     */
+    void save(DataOutputStream cp) throws IOException {
+        stats.save(cp);
+        int used = 0;
+        for (long c : counts) {
+            if (c != 0) {
+                used++;
+            }
+        }
+        cp.writeInt(used);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                cp.writeInt(i);
+                cp.writeLong(counts[i]);
+            }
+        }
+    }
+
+    void restore(DataInputStream cp) throws IOException {
+        stats.restore(cp);
+        Arrays.fill(counts, 0);
+        for (int used = cp.readInt(); used > 0; used--) {
+            int i = cp.readInt();
+            counts[i] = cp.readLong();
+        }
+    }
+}
@@ -1,6 +1,11 @@
+import java.nio.charset.StandardCharsets;
+
+// A message carries either text or, in binary mode, a byte array.  Either
+// form can be read back; the other one is derived on first use.
 public class Message
 {
     private String data;
+    private byte[] bytes;
     
     public Message(String inputData)
     {
@@ -14,12 +19,28 @@ public class Message
         }
         else
         {
-            data = new String(inputData);
+            data = inputData;
+        }
+    }
+
+    // Binary message.  The array is kept, not copied, and must not be
+    // modified afterwards.
+    public Message(byte[] inputData)
+    {
+        if ((inputData == null) ||
+            (inputData.length > NetworkSimulator.MAXDATASIZE))
+        {
+            data = "";
+        }
+        else
+        {
+            bytes = inputData;
         }
     }
            
     public boolean setData(String inputData)
     {
+        bytes = null;
         if (inputData == null)
         {
             data = "";
@@ -32,13 +53,28 @@ public class Message
         }
         else
         {
-            data = new String(inputData);
+            data = inputData;
             return true;
         }
     }
     
     public String getData()
     {
+        if (data == null)
+        {
+            data = new String(bytes, StandardCharsets.ISO_8859_1);
+        }
         return data;
     }
+
+    // The binary payload, or null for a text message
+    public byte[] getBytes()
+    {
+        return bytes;
+    }
+
+    public boolean isBinary()
+    {
+        return bytes != null;
+    }
 }
@@ -3,6 +3,13 @@ import java.util.Enumeration;
 import java.io.*;
 import java.util.Deque;
 import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.function.DoubleSupplier;
 
 public abstract class NetworkSimulator
 {
@@ -19,21 +26,138 @@ public abstract class NetworkSimulator
     public static final int A = 0;
     public static final int B = 1;
 
+    // Smallest delay of the links between A and B in the default
+    // topology: toLayer3 never delivers a packet sooner than this
+    public static final double MIN_LINK_DELAY = 1;
+
     private int maxMessages;
     private double lossProb;
     private double corruptProb;
     private double avgMessageDelay;
     protected int traceLevel;
     private EventList eventList;
-    private FileWriter outFile;
+    private EventStore eventStore;
+    private DeliverySink outFile;
+    private String outFileName;
+    private boolean outFileMapped;
+
+    // Where this simulator's console output goes
+    protected PrintStream out;
+
+    // Structured trace, written to out in the background
+    protected Trace trace;
+    private int traceCategories;
+
+    private static final int T_EVENT = Trace.define(2, Trace.EVENT,
+            "\nEVENT time: {t}  type: {0}  entity: {1}");
+    private static final int T_PANIC_TIMER = Trace.define(0, Trace.EVENT,
+            "INTERNAL PANIC: Timeout for invalid entity");
+    private static final int T_PANIC_PACKET = Trace.define(0, Trace.EVENT,
+            "INTERNAL PANIC: Packet has arrived for unknown entity");
+    private static final int T_PANIC_TYPE = Trace.define(0, Trace.EVENT,
+            "INTERNAL PANIC: Unknown event type");
+    private static final int T_TERMINATED = Trace.define(0, Trace.EVENT,
+            "Simulator terminated at time {t}");
+    private static final int T_ARRIVAL_CALLED = Trace.define(3, Trace.EVENT,
+            "generateNextArrival(): called");
+    private static final int T_ARRIVAL_TIME = Trace.define(3, Trace.EVENT,
+            "generateNextArrival(): time is {t}");
+    private static final int T_ARRIVAL_FUTURE = Trace.define(3, Trace.EVENT,
+            "generateNextArrival(): future time for event {0} at entity {1} " +
+            "will be {d}");
+    private static final int T_STOP_TIMER = Trace.define(3, Trace.TIMER,
+            "stopTimer: stopping timer at {t}");
+    private static final int T_STOP_WARNING = Trace.define(0, Trace.TIMER,
+            "stopTimer: Warning: Unable to cancel your timer");
+    private static final int T_START_TIMER = Trace.define(3, Trace.TIMER,
+            "startTimer: starting timer at {t}");
+    private static final int T_START_WARNING = Trace.define(0, Trace.TIMER,
+            "startTimer: Warning: Attempting to start a timer that is " +
+            "already running");
+    private static final int T_TO_LAYER3 = Trace.define(3, Trace.CHANNEL,
+            "toLayer3: {o}");
+    private static final int T_BAD_SENDER = Trace.define(0, Trace.CHANNEL,
+            "toLayer3: Warning: invalid packet sender");
+    private static final int T_NO_ROUTE = Trace.define(0, Trace.CHANNEL,
+            "toLayer3: Warning: no route from {0} to {1}");
+    private static final int T_FORWARD = Trace.define(3, Trace.CHANNEL,
+            "toLayer3: host {0} forwarding packet for host {1}");
+    private static final int T_PANIC_OUTPUT = Trace.define(0, Trace.EVENT,
+            "INTERNAL PANIC: Message from layer 5 for unknown entity");
+    private static final int T_LOST = Trace.define(1, Trace.CHANNEL,
+            "toLayer3: packet being lost");
+    private static final int T_QUEUE_DROP = Trace.define(1, Trace.CHANNEL,
+            "toLayer3: packet dropped by the queue on link {o}");
+    private static final int T_QUEUED = Trace.define(3, Trace.CHANNEL,
+            "toLayer3: packet waits {d} in the link queue");
+    private static final int T_CORRUPTED = Trace.define(1, Trace.CHANNEL,
+            "toLayer3: packet being corrupted");
+    private static final int T_SCHEDULED = Trace.define(3, Trace.CHANNEL,
+            "toLayer3: scheduling arrival on other side");
+    private static final int T_CHECKPOINT = Trace.define(1, Trace.EVENT,
+            "checkpoint: saved before the event at time {d}");
+    private static final int T_CHECKPOINT_FAILED = Trace.define(0, Trace.EVENT,
+            "checkpoint: Warning: unable to save checkpoint: {o}");
+
+    private RandomSource rand;
+    private final DoubleSupplier queueRandom =
+        () -> rand.nextDouble(RandomSource.QUEUE);
+
+    // Layer 5 payloads, built once: MAXDATASIZE copies of 'a' .. 'z'
+    private static final String[] MESSAGES = new String[26];
+    private static final byte[][] MESSAGE_BYTES = new byte[26][];
+    static
+    {
+        char[] data = new char[MAXDATASIZE];
+        for (int i = 0; i < 26; i++)
+        {
+            Arrays.fill(data, (char)(i + 97));
+            MESSAGES[i] = new String(data);
+            MESSAGE_BYTES[i] = new byte[MAXDATASIZE];
+            Arrays.fill(MESSAGE_BYTES[i], (byte)(i + 97));
+        }
+    }
 
-    private OSIRandom rand;
+    // Hand layer 5 messages to aOutput as byte arrays rather than Strings
+    private boolean binaryPayloads;
 
     protected int nSim;
     protected int nToLayer3;
     protected int nLost;
     protected int nCorrupt;
     private double time;
+
+    // Checkpoints are written to checkpointFile whenever simulated time
+    // passes the next multiple of checkpointInterval
+    private String checkpointFile;
+    private double checkpointInterval;
+    private double nextCheckpoint;
+
+    // Set by resume(): the state and event list came from a checkpoint,
+    // so runSimulator() must not initialise them again
+    private boolean resumed;
+    private long resumeDelivered;
+
+    // With more than one worker the run uses the parallel engine, which
+    // is set while it runs
+    private int workers = 1;
+    private ParallelEngine engine;
+
+    // Time of the pending arrival from layer 5
+    private double nextArrivalTime;
+
+    // Hosts and links; A and B joined directly unless set otherwise
+    private Topology topology;
+
+    // Number of layer 5 arrivals scheduled so far
+    private long arrivals;
+
+    // Set when this simulator runs as one flow inside another: its A and
+    // B are then hosts of the parent, which owns the clock, the timers,
+    // the channel and the delivery file
+    private NetworkSimulator parent;
+    private int flowA;
+    private int flowB;
     
     
     protected abstract void aOutput(Message message);
@@ -51,17 +175,35 @@ public abstract class NetworkSimulator
                             double avgDelay,
                             int trace,
                             int seed)
+    {
+        this(numMessages, loss, corrupt, avgDelay, trace, seed,
+             new EventListImpl());
+    }
+
+    // Same as above, but with the pending events kept in the given list
+    public NetworkSimulator(int numMessages,
+                            double loss,
+                            double corrupt,
+                            double avgDelay,
+                            int trace,
+                            int seed,
+                            EventList events)
     {
         maxMessages = numMessages;
         lossProb = loss;
         corruptProb = corrupt;
         avgMessageDelay = avgDelay;
         traceLevel = trace;
-        eventList = new EventListImpl();
+        eventList = events;
+        if (events instanceof EventStore)
+        {
+            eventStore = (EventStore)events;
+        }
         rand = new OSIRandom(seed);
-	try{
-	    outFile = new FileWriter("OutputFile");
-	}catch (Exception e) {e.printStackTrace();}
+        outFileName = "OutputFile";
+        out = System.out;
+        traceCategories = Trace.ALL;
+        this.trace = new Trace(out, traceLevel, traceCategories);
 
         nSim = 0;
         nToLayer3 = 0;
@@ -72,190 +214,408 @@ public abstract class NetworkSimulator
     
     public void runSimulator()
     {
-        Event next;
-        
-        // Perform any student-required initialization
-        aInit();
-        bInit();
+        if ((workers > 1) && (checkpointFile != null))
+        {
+            throw new IllegalStateException(
+                "Checkpoints are not supported by the parallel engine");
+        }
+        if (((checkpointFile != null) || resumed) && topology().hasQueues())
+        {
+            throw new IllegalStateException(
+                "Checkpoints do not cover the state of queue disciplines");
+        }
+
+        trace = new Trace(out, traceLevel, traceCategories);
+        if (outFileName != null)
+        {
+            try
+            {
+                // A resumed run keeps the deliveries made before the
+                // checkpoint and drops any made after it
+                outFile = new DeliverySink(outFileName, outFileMapped,
+                                           resumed ? resumeDelivered : 0);
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace(out);
+            }
+        }
+
+        if (resumed)
+        {
+            // Everything below was restored by resume()
+            resumed = false;
+            trace.setTime(time);
+        }
+        else
+        {
+            // Perform any student-required initialization
+            aInit();
+            bInit();
         
-        // Start the whole thing off by scheduling some data arrival
-        // from layer 5
-        generateNextArrival();
+            // Start the whole thing off by scheduling some data arrival
+            // from layer 5
+            generateNextArrival();
+        }
+
+        if (checkpointFile != null)
+        {
+            nextCheckpoint = checkpointInterval *
+                (Math.floor(time / checkpointInterval) + 1);
+        }
         
+        if (workers > 1)
+        {
+            runParallel();
+        }
+        else
+        {
+            runSequential();
+        }
+
+        trace.log(T_TERMINATED);
+        trace.close();
+        Simulation_done();
+	    try{
+	        if (outFile != null)
+	        {
+	            outFile.close();
+	            outFile = null;
+	        }
+	    }catch (Exception e) {e.printStackTrace(out);}
+	    out.flush();
+    }
+    
+    private void runSequential()
+    {
+        double nextTime;
+        int nextType;
+        int nextEntity;
+        Packet nextPacket;
+
         // Begin the main loop
         while (true)
         {
-            // Get our next event
-            next = eventList.removeNext();
-            if (next == null)
+            // Get our next event.  An EventStore is read slot by slot so
+            // that no Event has to be built for it.
+            if (eventStore != null)
             {
-                break;
+                int slot = eventStore.removeNextSlot();
+                if (slot < 0)
+                {
+                    break;
+                }
+                nextTime = eventStore.timeOf(slot);
+                nextType = eventStore.typeOf(slot);
+                nextEntity = eventStore.entityOf(slot);
+                nextPacket = eventStore.packetOf(slot);
+                eventStore.release(slot);
             }
-            
-            if (traceLevel >= 2)
+            else
             {
-                System.out.println();
-                System.out.print("EVENT time: " + next.getTime());
-                System.out.print("  type: " + next.getType());
-                System.out.println("  entity: " + next.getEntity());
+                Event next = eventList.removeNext();
+                if (next == null)
+                {
+                    break;
+                }
+                nextTime = next.getTime();
+                nextType = next.getType();
+                nextEntity = next.getEntity();
+                nextPacket = next.getPacket();
             }
             
+            if ((checkpointFile != null) && (nextTime >= nextCheckpoint))
+            {
+                writeCheckpoint(nextTime, nextType, nextEntity, nextPacket);
+                while (nextCheckpoint <= nextTime)
+                {
+                    nextCheckpoint += checkpointInterval;
+                }
+            }
+
             // Advance the simulator's time
-            time = next.getTime();
-            
-            // Perform the appropriate action based on the event 
-            switch (next.getType())
+            time = nextTime;
+            trace.setTime(time);
+            if (dispatch(nextType, nextEntity, nextPacket))
             {
-                case TIMERINTERRUPT:
-                    if (next.getEntity() == A)
-                    {
-                        aTimerInterrupt();
-                    }
-                    else
-                    {
-                        System.out.println("INTERNAL PANIC: Timeout for " +
-                                "invalid entity");
-                    }
-                    break;
+                break;
+            }
+        }
+    }
+
+    // Run the rest of the simulation on the parallel engine, which
+    // takes over the pending events
+    private void runParallel()
+    {
+        Topology t = topology();
+        if (!(t.minDelay() > 0))
+        {
+            throw new IllegalStateException(
+                "The parallel engine needs links with a positive delay");
+        }
+        engine = new ParallelEngine(this, eventList, workers, t.hosts(),
+                                    t.minDelay());
+        trace.setConcurrent(true);
+        try
+        {
+            time = engine.run(finalArrivalTime());
+        }
+        finally
+        {
+            engine.shutdown();
+            engine = null;
+            trace.setConcurrent(false);
+            trace.setTime(time);
+        }
+    }
 
-                case FROMLAYER3:
-                    if (next.getEntity() == A)
-                    {
-                        aInput(next.getPacket());
-                    }
-                    else if (next.getEntity() == B)
-                    {
-                        bInput(next.getPacket());
-                    }
-                    else
-                    {
-                        System.out.println("INTERNAL PANIC: Packet has " +
-                                "arrived for unknown entity");
-                    }
+    // Time of the arrival from layer 5 that ends the run.  Arrival times
+    // come from their random stream alone, so they can be worked out
+    // ahead on a copy of the generator.
+    double finalArrivalTime()
+    {
+        RandomSource copy = rand.copy();
+        double t = nextArrivalTime;
+        for (int n = nSim + 1; n <= maxMessages; n++)
+        {
+            double x = 2 * avgMessageDelay *
+                copy.nextDouble(RandomSource.ARRIVALS);
+            t = t + x;
+        }
+        return t;
+    }
 
-                    break;
+    // Hand one event to the protocol.  Returns true once the last
+    // message has arrived from layer 5 and the run is over.
+    boolean dispatch(int type, int entity, Packet packet)
+    {
+        trace.log(T_EVENT, type, entity);
+        
+        // Perform the appropriate action based on the event 
+        switch (type)
+        {
+            case TIMERINTERRUPT:
+                timerInterrupt(entity);
+                break;
 
-                case FROMLAYER5:
+            case FROMLAYER3:
+                int destination = packet.getDestination();
+                if ((destination >= 0) && (destination != entity))
+                {
+                    // Passing through on the way somewhere else
+                    forward(entity, destination, packet);
+                }
+                else
+                {
+                    input(entity, packet);
+                }
 
-                    // If a message has arrived from layer 5, we need to
-                    // schedule the arrival of the next message
-                    generateNextArrival();
+                break;
 
-                    char[] nextMessage = new char[MAXDATASIZE];
+            case FROMLAYER5:
 
-                    // Now, let's generate the contents of this message
-                    char j = (char)((nSim % 26) + 97);
-                    for (int i = 0; i < MAXDATASIZE; i++)
-                    {
-                        nextMessage[i] = j;
-                    }
+                // If a message has arrived from layer 5, we need to
+                // schedule the arrival of the next message
+                generateNextArrival();
 
-                    // Increment the message counter
-                    nSim++;
+                // The contents of this message are MAXDATASIZE copies
+                // of one letter, cycling through the alphabet
+                int letter = nSim % 26;
 
-                    // If we've reached the maximum message count, exit the main loop
-                    if (nSim == maxMessages+1)
-                        break;
+                // Increment the message counter
+                nSim++;
 
-                    // Let the student handle the new message
-                    aOutput(new Message(new String(nextMessage)));
+                // If we've reached the maximum message count, the run
+                // is over
+                if (nSim == maxMessages+1)
                     break;
 
-                default:
-                    System.out.println("INTERNAL PANIC: Unknown event type");
-            }
-	        if (nSim == maxMessages+1)
-		        break;
+                // Let the student handle the new message
+                if (binaryPayloads)
+                {
+                    output(entity, new Message(MESSAGE_BYTES[letter]));
+                }
+                else
+                {
+                    output(entity, new Message(MESSAGES[letter]));
+                }
+                break;
+
+            default:
+                trace.log(T_PANIC_TYPE);
         }
-        System.out.println("Simulator terminated at time "+getTime());
-        Simulation_done();
-	    try{
-	        outFile.flush();
-	        outFile.close();
-	    }catch (Exception e) {e.printStackTrace();}
+        return nSim == maxMessages+1;
     }
     
-    /* Generate the next arrival and add it to the event list */
-    private void generateNextArrival()
+    // Protocol entry points by host.  The defaults are the two-host
+    // interface, where A sends and runs the timer and B receives;
+    // protocols for larger topologies override them.
+    protected void output(int host, Message message)
     {
-        if (traceLevel > 2)
+        if (host == A)
         {
-            System.out.println("generateNextArrival(): called");
+            aOutput(message);
         }
+        else
+        {
+            trace.log(T_PANIC_OUTPUT);
+        }
+    }
+
+    protected void input(int host, Packet packet)
+    {
+        if (host == A)
+        {
+            aInput(packet);
+        }
+        else if (host == B)
+        {
+            bInput(packet);
+        }
+        else
+        {
+            trace.log(T_PANIC_PACKET);
+        }
+    }
+
+    protected void timerInterrupt(int host)
+    {
+        if (host == A)
+        {
+            aTimerInterrupt();
+        }
+        else
+        {
+            trace.log(T_PANIC_TIMER);
+        }
+    }
+
+    /* Generate the next arrival and add it to the event list */
+    private void generateNextArrival()
+    {
+        trace.log(T_ARRIVAL_CALLED);
         
         // arrival time 'x' is uniform on [0, 2*avgMessageDelay]
         // having mean of avgMessageDelay.  Should this be made
         // into a Gaussian distribution? 
-        double x = 2 * avgMessageDelay * rand.nextDouble(0);
-        Event next = new Event(time + x, FROMLAYER5, A);
-                
-        eventList.add(next);
-        if (traceLevel > 2)
-        {
-            System.out.println("generateNextArrival(): time is " + time);
-            System.out.println("generateNextArrival(): future time for " +
-                               "event " + next.getType() + " at entity " +
-                               next.getEntity() + " will be " +
-                               next.getTime());
-        }
+        double x = 2 * avgMessageDelay *
+            rand.nextDouble(RandomSource.ARRIVALS);
+        nextArrivalTime = getTime() + x;
+        int source = topology().source(arrivals++);
+        schedule(nextArrivalTime, FROMLAYER5, source, null);
+
+        trace.log(T_ARRIVAL_TIME);
+        trace.logValue(T_ARRIVAL_FUTURE, FROMLAYER5, source, nextArrivalTime);
         
     }
     
+    // Run as a flow between two hosts of parent, which calls the
+    // protocol's entry points itself.  The parent's trace must already
+    // be set up, so this is done once its run has started.
+    void runAsFlow(NetworkSimulator parent, int hostA, int hostB)
+    {
+        this.parent = parent;
+        flowA = hostA;
+        flowB = hostB;
+        trace = parent.trace;
+        out = parent.out;
+    }
+
+    // The parent's host for A or B of a flow
+    private int flowHost(int entity)
+    {
+        if (entity == A)
+        {
+            return flowA;
+        }
+        else if (entity == B)
+        {
+            return flowB;
+        }
+        return -1;
+    }
+
     protected void stopTimer(int entity)
     {
-        if (traceLevel > 2)
+        if (parent != null)
         {
-            System.out.println("stopTimer: stopping timer at " + time);
+            parent.stopTimer(flowHost(entity));
+            return;
         }
 
-        Event timer = eventList.removeTimer(entity);
+        trace.log(T_STOP_TIMER);
+
+        boolean cancelled;
+        if (engine != null)
+        {
+            cancelled = (engine.events(entity).removeTimer(entity) != null);
+        }
+        else if (eventStore != null)
+        {
+            cancelled = eventStore.cancelTimer(entity);
+        }
+        else
+        {
+            cancelled = (eventList.removeTimer(entity) != null);
+        }
 
         // Let the student know they are attempting to cancel a non-existant 
         // timer
-        if (timer == null)
+        if (!cancelled)
         {
-            System.out.println("stopTimer: Warning: Unable to cancel your " +
-                               "timer");
+            trace.log(T_STOP_WARNING);
         }        
     }
     
     protected void startTimer(int entity, double increment)
     {
-        if (traceLevel > 2)
+        if (parent != null)
         {
-            System.out.println("startTimer: starting timer at " + time);
+            parent.startTimer(flowHost(entity), increment);
+            return;
         }
 
-        Event t = eventList.removeTimer(entity);        
+        trace.log(T_START_TIMER);
 
-        if (t != null)
+        boolean running;
+        if ((eventStore != null) && (engine == null))
         {
-            System.out.println("startTimer: Warning: Attempting to start a " +
-                               "timer that is already running");
-            eventList.add(t);
+            running = eventStore.requeueTimer(entity);
+        }
+        else
+        {
+            EventList list = (engine != null) ? engine.events(entity)
+                                               : eventList;
+            Event t = list.removeTimer(entity);
+            running = (t != null);
+            if (running)
+            {
+                list.add(t);
+            }
+        }
+
+        if (running)
+        {
+            trace.log(T_START_WARNING);
             return;
         }
         else
         {
-            Event timer = new Event(time + increment, TIMERINTERRUPT, entity);
-            eventList.add(timer);
+            schedule(getTime() + increment, TIMERINTERRUPT, entity, null);
         }
     }    
     
     protected void toLayer3(int callingEntity, Packet p)
     {
-        nToLayer3++;
-        
-        int destination;
-        double arrivalTime;
-        Packet packet = new Packet(p);
-    
-        if (traceLevel > 2)
+        if (parent != null)
         {
-            System.out.println("toLayer3: " + packet);
+            parent.toLayer3(flowHost(callingEntity),
+                            flowHost((callingEntity == A) ? B : A), p);
+            return;
         }
 
         // Set our destination
+        int destination;
         if (callingEntity == A)
         {
             destination = B;
@@ -266,47 +626,151 @@ public abstract class NetworkSimulator
         }
         else
         {
-            System.out.println("toLayer3: Warning: invalid packet sender");
+            destination = -1;
+        }
+        toLayer3(callingEntity, destination, p);
+    }
+
+    // Send p from one host to another, over as many links as routing
+    // takes it.  A packet that is resent to the same host is not copied.
+    // In a flow the hosts are the parent's.
+    protected void toLayer3(int from, int to, Packet p)
+    {
+        if (parent != null)
+        {
+            parent.toLayer3(from, to, p);
+            return;
+        }
+
+        if ((p.getSource() != from) || (p.getDestination() != to))
+        {
+            if (p.isSealed())
+            {
+                p = new Packet(p);
+            }
+            p.setAddress(from, to);
+        }
+
+        if (engine != null)
+        {
+            // Put on the channel between rounds, in time order
+            p.seal();
+            engine.send(from, to, p);
+            return;
+        }
+        transmit(time, from, to, p);
+    }
+
+    // A router passes a packet on towards its destination
+    private void forward(int host, int destination, Packet packet)
+    {
+        trace.log(T_FORWARD, host, destination);
+        if (engine != null)
+        {
+            engine.send(host, destination, packet);
+            return;
+        }
+        transmit(time, host, destination, packet);
+    }
+
+    // The channel: put a packet sent at time now on the first link
+    // towards its destination, which may lose, delay or corrupt it
+    void transmit(double now, int from, int to, Packet p)
+    {
+        nToLayer3++;
+        
+        double arrivalTime;
+
+        // The packet is shared with the receiver from here on; it is only
+        // copied if the channel corrupts it
+        p.seal();
+        Packet packet = p;
+    
+        trace.log(T_TO_LAYER3, packet);
+
+        Topology.Link link = topology().route(from, to);
+        if (link == null)
+        {
+            if ((from < 0) || (from >= topology().hosts()))
+            {
+                trace.log(T_BAD_SENDER);
+            }
+            else
+            {
+                trace.log(T_NO_ROUTE, from, to);
+            }
             return;
         }
 
         // Simulate losses
-        if (rand.nextDouble(1) < lossProb)
+        if (rand.nextDouble(RandomSource.LOSS) < link.getLoss())
         {
             nLost++;
             
-            if (traceLevel > 0)
-            {
-                System.out.println("toLayer3: packet being lost");
-            }
+            trace.log(T_LOST);
             
             return;
         }
         
-        // Decide when the packet will arrive.  Since the medium cannot
-        // reorder, the packet will arrive 1 to 10 time units after the
-        // last packet sent by this sender
-        arrivalTime = eventList.getLastPacketTime(destination);
-        
-        if (arrivalTime <= 0.0)
+        // A link with a rate sends the packet once the ones queued ahead
+        // of it have gone, unless its queue drops it, and it then
+        // propagates for delay to delay + jitter time units while the
+        // next ones are sent.  It only waits for the packet ahead of it
+        // if that would arrive later, since the link cannot reorder.
+        if (link.hasRate())
         {
-            arrivalTime = time;
+            double start = link.enqueue(now, packet.size(), queueRandom);
+            if (start < 0)
+            {
+                trace.log(T_QUEUE_DROP, link);
+                packetDropped(link, packet);
+                return;
+            }
+            trace.logValue(T_QUEUED, start - now);
+            packetQueued(link, packet, start - now);
+
+            arrivalTime = link.busyUntil + link.getDelay() +
+                link.jitter(rand.nextDouble(RandomSource.DELAY));
+            if (arrivalTime < link.lastArrival)
+            {
+                arrivalTime = link.lastArrival;
+            }
         }
-        
-        arrivalTime = arrivalTime + 1 + (rand.nextDouble(2) * 9);
+        else
+        {
+            // Decide when the packet will arrive.  Since the link cannot
+            // reorder, the packet will arrive delay to delay + jitter time
+            // units after the last packet still in flight on it
+            arrivalTime = link.lastArrival;
+
+            if (arrivalTime <= now)
+            {
+                arrivalTime = now;
+            }
+
+            arrivalTime = arrivalTime + link.getDelay() +
+                link.jitter(rand.nextDouble(RandomSource.DELAY));
+        }
+        link.lastArrival = arrivalTime;
 
         // Simulate corruption
-        if (rand.nextDouble(3) < corruptProb)
+        if (rand.nextDouble(RandomSource.CORRUPTION) < link.getCorrupt())
         {
             nCorrupt++;
             
-            if (traceLevel > 0)
+            trace.log(T_CORRUPTED);
+            
+            packet = new Packet(p);
+            double x = rand.nextDouble(RandomSource.CORRUPTION_KIND);
+            if ((x < 0.75) && packet.isBinary())
             {
-                System.out.println("toLayer3: packet being corrupted");
+                byte[] payload = packet.getPayloadBytes();
+                byte[] damaged = (payload.length > 0) ? payload.clone()
+                                                      : new byte[1];
+                damaged[0] = '?';
+                packet.setPayload(damaged);
             }
-            
-            double x = rand.nextDouble(4);
-            if (x < 0.75)
+            else if (x < 0.75)
             {
                 String payload = packet.getPayload();
                 
@@ -326,34 +790,383 @@ public abstract class NetworkSimulator
             {
                 packet.setAcknum(999999);
             }
+            packet.seal();
         }
         
 
         // Finally, create and schedule this event
-        if (traceLevel > 2)
+        trace.log(T_SCHEDULED);
+        schedule(arrivalTime, FROMLAYER3, link.getTo(), packet);
+    }
+
+    // Write a checkpoint taken just before the given event, which has
+    // already been removed from the event list, is processed.  The file
+    // is written beside the target and renamed over it, so an
+    // interrupted write leaves the previous checkpoint intact.
+    private void writeCheckpoint(double nextTime, int nextType,
+                                 int nextEntity, Packet nextPacket)
+    {
+        // The event list has no iterator, so it is drained and refilled
+        // in the same order, which keeps ties between equal times intact
+        List<Event> pending = new ArrayList<Event>();
+        Event e;
+        while ((e = eventList.removeNext()) != null)
+        {
+            pending.add(e);
+        }
+
+        String tmp = checkpointFile + ".tmp";
+        try
+        {
+            saveCheckpoint(tmp, nextTime, nextType, nextEntity, nextPacket,
+                           pending);
+            Files.move(Paths.get(tmp), Paths.get(checkpointFile),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            trace.logValue(T_CHECKPOINT, nextTime);
+        }
+        catch (IOException ioe)
+        {
+            trace.log(T_CHECKPOINT_FAILED, ioe);
+        }
+        finally
+        {
+            for (Event p : pending)
+            {
+                eventList.add(p);
+            }
+        }
+    }
+
+    private void saveCheckpoint(String fileName, double nextTime,
+                                int nextType, int nextEntity,
+                                Packet nextPacket, List<Event> pending)
+        throws IOException
+    {
+        DataOutputStream cp = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(fileName)));
+        try
+        {
+            cp.writeInt(Checkpoint.MAGIC);
+            cp.writeInt(Checkpoint.VERSION);
+            cp.writeInt(maxMessages);
+            cp.writeDouble(lossProb);
+            cp.writeDouble(corruptProb);
+            cp.writeDouble(avgMessageDelay);
+            cp.writeBoolean(binaryPayloads);
+            cp.writeInt(nSim);
+            cp.writeInt(nToLayer3);
+            cp.writeInt(nLost);
+            cp.writeInt(nCorrupt);
+            cp.writeDouble(time);
+            long[] state = rand.getState();
+            cp.writeInt(state.length);
+            for (long l : state)
+            {
+                cp.writeLong(l);
+            }
+            if (outFile != null)
+            {
+                outFile.flush();
+                cp.writeLong(outFile.size());
+            }
+            else
+            {
+                cp.writeLong(0);
+            }
+            cp.writeLong(arrivals);
+            List<Topology.Link> links = topology().links();
+            cp.writeInt(links.size());
+            for (Topology.Link l : links)
+            {
+                cp.writeDouble(l.lastArrival);
+                cp.writeDouble(l.busyUntil);
+            }
+
+            cp.writeInt(pending.size() + 1);
+            writeEvent(cp, nextTime, nextType, nextEntity, nextPacket);
+            for (Event p : pending)
+            {
+                writeEvent(cp, p.getTime(), p.getType(), p.getEntity(),
+                           p.getPacket());
+            }
+
+            saveState(cp);
+        }
+        finally
+        {
+            cp.close();
+        }
+    }
+
+    private static void writeEvent(DataOutputStream cp, double t, int type,
+                                   int entity, Packet packet)
+        throws IOException
+    {
+        cp.writeDouble(t);
+        cp.writeInt(type);
+        cp.writeInt(entity);
+        Checkpoint.writePacket(cp, packet);
+    }
+
+    // Continue the run saved in the given checkpoint at the next
+    // runSimulator(), instead of starting a new one.  The parameters in
+    // the checkpoint replace those the simulator was built with, and the
+    // delivery file is cut back to what had been delivered by then.
+    public void resume(String fileName) throws IOException
+    {
+        DataInputStream cp = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(fileName)));
+        try
+        {
+            if ((cp.readInt() != Checkpoint.MAGIC) ||
+                (cp.readInt() != Checkpoint.VERSION))
+            {
+                throw new IOException(fileName + " is not a checkpoint");
+            }
+            maxMessages = cp.readInt();
+            lossProb = cp.readDouble();
+            corruptProb = cp.readDouble();
+            avgMessageDelay = cp.readDouble();
+            binaryPayloads = cp.readBoolean();
+            nSim = cp.readInt();
+            nToLayer3 = cp.readInt();
+            nLost = cp.readInt();
+            nCorrupt = cp.readInt();
+            time = cp.readDouble();
+            long[] state = rand.getState();
+            if (cp.readInt() != state.length)
+            {
+                throw new IOException(fileName +
+                    " was saved with a different random source");
+            }
+            for (int i = 0; i < state.length; i++)
+            {
+                state[i] = cp.readLong();
+            }
+            rand.setState(state);
+            resumeDelivered = cp.readLong();
+            arrivals = cp.readLong();
+            List<Topology.Link> links = topology().links();
+            if (cp.readInt() != links.size())
+            {
+                throw new IOException(fileName +
+                    " was saved with a different topology");
+            }
+            for (Topology.Link l : links)
+            {
+                l.lastArrival = cp.readDouble();
+                l.busyUntil = cp.readDouble();
+            }
+
+            while (eventList.removeNext() != null)
+            {
+                // Drop whatever the list held
+            }
+            int n = cp.readInt();
+            for (int i = 0; i < n; i++)
+            {
+                double t = cp.readDouble();
+                int type = cp.readInt();
+                int entity = cp.readInt();
+                if (type == FROMLAYER5)
+                {
+                    nextArrivalTime = t;
+                }
+                schedule(t, type, entity, Checkpoint.readPacket(cp));
+            }
+
+            restoreState(cp);
+        }
+        finally
         {
-            System.out.println("toLayer3: scheduling arrival on other side");
+            cp.close();
+        }
+        resumed = true;
+    }
+
+    // Called when a packet joins the queue of a link with a rate, with
+    // the time it will wait before being sent, or when a discipline
+    // drops it.  Subclasses override these to keep per-flow statistics.
+    protected void packetQueued(Topology.Link link, Packet packet,
+                                double wait)
+    {
+    }
+
+    protected void packetDropped(Topology.Link link, Packet packet)
+    {
+    }
+
+    // Save and restore the protocol state for checkpoints.  Subclasses
+    // that support checkpoints write everything aInit() and bInit() set
+    // up; restoreState() reads it back in the same order.
+    protected void saveState(DataOutputStream cp) throws IOException
+    {
+        throw new UnsupportedOperationException(
+            getClass().getName() + " does not support checkpoints");
+    }
+
+    protected void restoreState(DataInputStream cp) throws IOException
+    {
+        throw new UnsupportedOperationException(
+            getClass().getName() + " does not support checkpoints");
+    }
+
+    // Queue an event.  The packet, if any, is owned by the event list
+    // from here on and is not copied again.
+    private void schedule(double t, int type, int entity, Packet packet)
+    {
+        if (engine != null)
+        {
+            engine.schedule(t, type, entity, packet);
+        }
+        else if (eventStore != null)
+        {
+            eventStore.schedule(t, type, entity, packet);
+        }
+        else
+        {
+            eventList.add(Event.wrap(t, type, entity, packet));
         }
-        Event arrival = new Event(arrivalTime, FROMLAYER3, destination, packet);
-        eventList.add(arrival);
     }
     
     protected void toLayer5(String dataSent)
     {
+        if (parent != null)
+        {
+            parent.toLayer5(dataSent);
+            return;
+        }
+        if (outFile == null)
+        {
+            return;
+        }
+	try{
+	    outFile.deliver(dataSent);
+	}catch (Exception e) {e.printStackTrace(out);}
+    }
+    
+    protected void toLayer5(byte[] dataSent)
+    {
+        if (parent != null)
+        {
+            parent.toLayer5(dataSent);
+            return;
+        }
+        if (outFile == null)
+        {
+            return;
+        }
 	try{
-	    outFile.write(dataSent,0,MAXDATASIZE);
-	    outFile.write('\n');
-	}catch (Exception e) {e.printStackTrace();}
+	    outFile.deliver(dataSent);
+	}catch (Exception e) {e.printStackTrace(out);}
+    }
+
+    // Send this simulator's trace and statistics to the given stream
+    // instead of System.out
+    public void setOutput(PrintStream output)
+    {
+        out = output;
+    }
+
+    // Only trace statements in these categories (Trace.EVENT etc., or'ed
+    // together) are written; all are by default
+    public void setTraceCategories(int categories)
+    {
+        traceCategories = categories;
+    }
+
+    // Write layer 5 deliveries to the given file instead of "OutputFile";
+    // null discards them.  Takes effect at the next runSimulator().
+    public void setDeliveryFile(String fileName)
+    {
+        setDeliveryFile(fileName, false);
+    }
+
+    // As above; with mapped set, the file is written through a memory
+    // mapping instead of buffered channel writes
+    public void setDeliveryFile(String fileName, boolean mapped)
+    {
+        outFileName = fileName;
+        outFileMapped = mapped;
+    }
+
+    // Save a checkpoint to fileName each time simulated time passes a
+    // multiple of interval; null turns checkpoints off
+    public void setCheckpoint(String fileName, double interval)
+    {
+        if ((fileName != null) && !(interval > 0))
+        {
+            throw new IllegalArgumentException(
+                "Checkpoint interval must be positive");
+        }
+        checkpointFile = fileName;
+        checkpointInterval = interval;
+    }
+
+    // Simulate the given hosts and links instead of A and B joined
+    // directly.  The loss and corruption probabilities given to the
+    // constructor only apply to the default topology.
+    public void setTopology(Topology t)
+    {
+        topology = t;
+    }
+
+    private Topology topology()
+    {
+        if (topology == null)
+        {
+            topology = Topology.twoHost(lossProb, corruptProb);
+        }
+        return topology;
+    }
+
+    // Run on this many worker threads with the parallel engine; 1 keeps
+    // the sequential event loop
+    public void setWorkers(int n)
+    {
+        if (n < 1)
+        {
+            throw new IllegalArgumentException("Need at least one worker");
+        }
+        workers = n;
+    }
+
+    // Draw random numbers from r instead of OSIRandom with the seed given
+    // to the constructor.  Set it before resume() or runSimulator().
+    public void setRandomSource(RandomSource r)
+    {
+        rand = r;
+    }
+
+    public void setBinaryPayloads(boolean binary)
+    {
+        binaryPayloads = binary;
     }
     
     protected double getTime()
     {
+        if (parent != null)
+        {
+            return parent.getTime();
+        }
+        if (engine != null)
+        {
+            return engine.now();
+        }
         return time;
     }
     
     protected void printEventList()
     {
-        System.out.println(eventList.toString());
+        if (parent != null)
+        {
+            parent.printEventList();
+            return;
+        }
+        trace.flush();
+        out.println((engine != null) ? engine.toString()
+                                     : eventList.toString());
     }
     
 }
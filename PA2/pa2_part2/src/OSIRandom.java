@@ -1,13 +1,43 @@
-public class OSIRandom
+// The original generator: a 15-bit linear congruential generator per
+// stream, stream i seeded with s + i.  It is kept so that runs match
+// the original simulator exactly; SplitRandom is better for anything
+// else.
+public class OSIRandom implements RandomSource
 {
-    private long seed[] = new long[5];
+    private long seed[] = new long[STREAMS];
 
     public OSIRandom(int s)
     {
-	for (int i=0;i<5;i++)
+	for (int i=0;i<STREAMS;i++)
 	  seed[i] = (s+i) & 0xFFFFFFFFL;
     }
 
+    // The stream seeds, for checkpoints
+    public long[] getState()
+    {
+	return seed.clone();
+    }
+
+    public void setState(long[] state)
+    {
+	System.arraycopy(state, 0, seed, 0, seed.length);
+    }
+
+    public RandomSource copy()
+    {
+	OSIRandom r = new OSIRandom(0);
+	r.setState(seed);
+	return r;
+    }
+
+    // Seeds s + i overlap from one seed to the next, so the generator
+    // cannot be split; replications use different seeds instead
+    public RandomSource split()
+    {
+	throw new UnsupportedOperationException(
+	    "OSIRandom streams cannot be split");
+    }
+
     public int nextInt(int i)
     {
 	seed[i] = ((seed[i]&0xFFFFFFFFL)*(1103515245&0xFFFFFFFFL)+12345)&0xFFFFFFFFL;
@@ -1,22 +1,50 @@
-import java.util.Deque;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
 
+// A packet becomes read-only once it is sealed, which toLayer3 does when
+// the packet enters the channel.  Sealed packets are shared rather than
+// copied on their way through the event list to the receiver, so the
+// setters refuse (and return false) once a packet is sealed.  Payloads
+// are immutable Strings and are never copied.  The SACK list is copied
+// once, into an immutable list, when the packet is made, so the sender's
+// own list can go on changing and the trace can format it later.
+//
+// In binary mode the payload is a byte array instead; it is kept by
+// reference too and must not be modified once handed to the packet.
+// getPayload() still works and decodes the bytes as ISO-8859-1.
+//
+// toLayer3 stamps each packet with the hosts it travels between, which
+// is how the hosts of a Topology know where to forward it.
 public class Packet
 {
+    public static final int HEADER_SIZE = 12;
+
     private int seqnum;
     private int acknum;
     private int checksum;
     private String payload;
-    private Deque<Integer> mostRecentAck;
+    private byte[] payloadBytes;
+    private List<Integer> mostRecentAck;
+    private boolean sealed;
+    private int source = -1;
+    private int destination = -1;
+    private double layer5Time = -1;
     
+    // The copy is not sealed, even if p is
     public Packet(Packet p)
     {
         seqnum = p.getSeqnum();
         acknum = p.getAcknum();
         checksum = p.getChecksum();
-        payload = new String(p.getPayload());
-        mostRecentAck = p.getMostRecentAck();
+        payload = p.payload;
+        payloadBytes = p.payloadBytes;
+        mostRecentAck = p.mostRecentAck;
+        source = p.source;
+        destination = p.destination;
+        layer5Time = p.layer5Time;
     }
-    public Packet(int seq, int ack, int check, String newPayload, Deque<Integer> mostRecentAck)
+    public Packet(int seq, int ack, int check, String newPayload, Collection<Integer> mostRecentAck)
     {
         seqnum = seq;
         acknum = ack;
@@ -31,9 +59,9 @@ public class Packet
         }
         else
         {
-            payload = new String(newPayload);
+            payload = newPayload;
         }
-        this.mostRecentAck = mostRecentAck;
+        this.mostRecentAck = mostRecentAck == null ? null : List.copyOf(mostRecentAck);
     }
     public Packet(int seq, int ack, int check, String newPayload)
     {
@@ -50,10 +78,35 @@ public class Packet
         }
         else
         {
-            payload = new String(newPayload);
+            payload = newPayload;
         }
     }
     
+    public Packet(int seq, int ack, int check, byte[] newPayload)
+    {
+        this(seq, ack, check, newPayload, null);
+    }
+
+    public Packet(int seq, int ack, int check, byte[] newPayload, Collection<Integer> mostRecentAck)
+    {
+        seqnum = seq;
+        acknum = ack;
+        checksum = check;
+        if (newPayload == null)
+        {
+            payload = "";
+        }
+        else if (newPayload.length > NetworkSimulator.MAXDATASIZE)
+        {
+            payload = null;
+        }
+        else
+        {
+            payloadBytes = newPayload;
+        }
+        this.mostRecentAck = mostRecentAck == null ? null : List.copyOf(mostRecentAck);
+    }
+
     public Packet(int seq, int ack, int check)
     {
         seqnum = seq;
@@ -62,29 +115,58 @@ public class Packet
         payload = "";
     }    
         
-    public Deque<Integer> getMostRecentAck(){
+    // Read-only; null if the packet has no SACK list
+    public List<Integer> getMostRecentAck(){
         return this.mostRecentAck;
     }
+
+    public void seal()
+    {
+        sealed = true;
+    }
+
+    public boolean isSealed()
+    {
+        return sealed;
+    }
+
     public boolean setSeqnum(int n)
     {
+        if (sealed)
+        {
+            return false;
+        }
         seqnum = n;
         return true;
     }
     
     public boolean setAcknum(int n)
     {
+        if (sealed)
+        {
+            return false;
+        }
         acknum = n;
         return true;
     }
     
     public boolean setChecksum(int n)
     {
+        if (sealed)
+        {
+            return false;
+        }
         checksum = n;
         return true;
     }
     
     public boolean setPayload(String newPayload)
     {
+        if (sealed)
+        {
+            return false;
+        }
+        payloadBytes = null;
         if (newPayload == null)
         {
             payload = "";
@@ -97,7 +179,26 @@ public class Packet
         }
         else
         {
-            payload = new String(newPayload);
+            payload = newPayload;
+            return true;
+        }
+    }
+
+    public boolean setPayload(byte[] newPayload)
+    {
+        if (sealed)
+        {
+            return false;
+        }
+        else if ((newPayload == null) ||
+                 (newPayload.length > NetworkSimulator.MAXDATASIZE))
+        {
+            return setPayload((String)null);
+        }
+        else
+        {
+            payload = null;
+            payloadBytes = newPayload;
             return true;
         }
     }
@@ -119,13 +220,89 @@ public class Packet
     
     public String getPayload()
     {
+        if ((payload == null) && (payloadBytes != null))
+        {
+            payload = new String(payloadBytes, StandardCharsets.ISO_8859_1);
+        }
         return payload;
     }
+
+    // The binary payload, or null for a text packet
+    public byte[] getPayloadBytes()
+    {
+        return payloadBytes;
+    }
+
+    public boolean isBinary()
+    {
+        return payloadBytes != null;
+    }
+
+    public boolean setAddress(int from, int to)
+    {
+        if (sealed)
+        {
+            return false;
+        }
+        source = from;
+        destination = to;
+        return true;
+    }
+
+    // Host that sent the packet, or -1 before it is sent
+    public int getSource()
+    {
+        return source;
+    }
+
+    // Host the packet is for, or -1 before it is sent
+    public int getDestination()
+    {
+        return destination;
+    }
+
+    // Like the addresses, not part of the packet on the wire: when its
+    // payload arrived from layer 5 at the sender, for the latency
+    // statistics, or -1
+    public boolean setLayer5Time(double time)
+    {
+        if (sealed)
+        {
+            return false;
+        }
+        layer5Time = time;
+        return true;
+    }
+
+    public double getLayer5Time()
+    {
+        return layer5Time;
+    }
+
+    // Size on the wire in bytes, for links with a finite rate: a header of
+    // three ints, the payload and an int per SACK entry
+    public int size()
+    {
+        int n = HEADER_SIZE;
+        if (payloadBytes != null)
+        {
+            n += payloadBytes.length;
+        }
+        else if (payload != null)
+        {
+            n += payload.length();
+        }
+        if (mostRecentAck != null)
+        {
+            n += 4 * mostRecentAck.size();
+        }
+        return n;
+    }
     
     public String toString()
     {
         return("seqnum: " + seqnum + "  acknum: " + acknum + "  checksum: " +
-               checksum + "  payload: " + payload);
+               checksum + "  payload: " + getPayload());
     }
     
 }
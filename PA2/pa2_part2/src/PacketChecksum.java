@@ -0,0 +1,9 @@
+// Checksum over a packet's header fields and payload.  The sender stores
+// the result in the packet; the receiver recomputes it to detect damage.
+// Text payloads are checksummed as their low byte per character, so a
+// String and a byte[] holding the same ASCII data give the same value.
+public interface PacketChecksum
+{
+    public int compute(int seqnum, int acknum, String payload);
+    public int compute(int seqnum, int acknum, byte[] payload);
+}
@@ -0,0 +1,317 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Conservative parallel event loop for NetworkSimulator.
+//
+// Every host gets its own event queue, a partition, and the partitions
+// run on a pool of worker threads in rounds.  A round starts at T, the
+// earliest pending event anywhere, and each partition runs its events
+// before T + L independently of the others, where L is the smallest
+// link delay in the topology.  That is safe because hosts only reach
+// each other through links, which never deliver a packet sooner than L
+// after it was sent, so nothing sent during a round can arrive within
+// it.
+//
+// To get the same results as the sequential loop, packets are not put
+// on the channel while a round runs; toLayer3 only records them.
+// Between rounds the recorded sends are replayed through
+// NetworkSimulator.transmit() in simulated-time order, which draws the
+// loss, delay and corruption random numbers in the sequential order,
+// and the arrivals are queued where the links end.  Arrivals from
+// layer 5 use a random stream of their own, so the time of the one that
+// ends the run is known before the first round and no partition runs
+// past it.  Where events of different entities have exactly the same
+// time, sends are replayed in host order rather than in the order the
+// sequential loop would have produced them.
+//
+// The protocol code of different hosts runs concurrently, so it must
+// not share mutable state between hosts, and a host may only start or
+// stop its own timers.
+class ParallelEngine
+{
+    private final NetworkSimulator sim;
+    private final Partition[] partitions;
+    private final ExecutorService pool;
+    private final ThreadLocal<Partition> current = new ThreadLocal<>();
+    private final List<Send> sends = new ArrayList<>();
+    private final double lookahead;
+    private volatile boolean finished;
+
+    // One host's events and clock
+    private static class Partition
+    {
+        final int entity;
+        final HeapEventList events = new HeapEventList();
+        final List<Send> sends = new ArrayList<>();
+        double time;
+
+        Partition(int entity)
+        {
+            this.entity = entity;
+        }
+    }
+
+    // A packet handed to toLayer3, waiting to be replayed
+    private static class Send
+    {
+        final double time;
+        final int caller;
+        final int destination;
+        final int seq;
+        final Packet packet;
+
+        Send(double time, int caller, int destination, int seq,
+             Packet packet)
+        {
+            this.time = time;
+            this.caller = caller;
+            this.destination = destination;
+            this.seq = seq;
+            this.packet = packet;
+        }
+    }
+
+    private static final Comparator<Send> REPLAY_ORDER =
+        Comparator.comparingDouble((Send s) -> s.time)
+                  .thenComparingInt(s -> s.caller)
+                  .thenComparingInt(s -> s.seq);
+
+    // Take over the events pending in the given list, keeping their
+    // order, and start the worker threads.  Rounds last lookahead, the
+    // smallest delay of any link.
+    ParallelEngine(NetworkSimulator sim, EventList pending, int workers,
+                   int hosts, double lookahead)
+    {
+        this.sim = sim;
+        this.lookahead = lookahead;
+        partitions = new Partition[hosts];
+        for (int i = 0; i < partitions.length; i++)
+        {
+            partitions[i] = new Partition(i);
+        }
+
+        Event e;
+        while ((e = pending.removeNext()) != null)
+        {
+            schedule(e.getTime(), e.getType(), e.getEntity(), e.getPacket());
+        }
+
+        pool = Executors.newFixedThreadPool(
+            Math.min(workers, partitions.length), r -> {
+                Thread t = new Thread(r, "simulator-worker");
+                t.setDaemon(true);
+                return t;
+            });
+    }
+
+    // Run until the arrival from layer 5 at endTime has been handled, and
+    // return the time of the last event run
+    double run(double endTime)
+    {
+        double last = 0;
+        while (!finished)
+        {
+            double start = Double.POSITIVE_INFINITY;
+            for (Partition p : partitions)
+            {
+                start = Math.min(start, p.events.peekTime());
+            }
+            if (start == Double.POSITIVE_INFINITY)
+            {
+                break;
+            }
+
+            if (start >= endTime)
+            {
+                // Only the final arrival (and anything tied with it) is
+                // left to run; do it one event at a time
+                last = step();
+            }
+            else
+            {
+                double end = Math.min(start + lookahead, endTime);
+                last = round(end);
+            }
+            replay();
+        }
+        return last;
+    }
+
+    void shutdown()
+    {
+        pool.shutdownNow();
+    }
+
+    // Run every partition's events before end; returns the latest time run
+    private double round(double end)
+    {
+        List<Callable<Double>> tasks = new ArrayList<>();
+        for (Partition p : partitions)
+        {
+            if (p.events.peekTime() < end)
+            {
+                tasks.add(() -> runPartition(p, end));
+            }
+        }
+
+        double last = 0;
+        if (tasks.size() == 1)
+        {
+            // Nothing to overlap with; skip the hand-off to the pool
+            try
+            {
+                return tasks.get(0).call();
+            }
+            catch (Exception e)
+            {
+                throw propagate(e);
+            }
+        }
+        try
+        {
+            for (Future<Double> f : pool.invokeAll(tasks))
+            {
+                last = Math.max(last, f.get());
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw propagate(e.getCause());
+        }
+        return last;
+    }
+
+    private double runPartition(Partition p, double end)
+    {
+        current.set(p);
+        try
+        {
+            while (!finished && (p.events.peekTime() < end))
+            {
+                runNext(p);
+            }
+            return p.time;
+        }
+        finally
+        {
+            current.remove();
+        }
+    }
+
+    // Run the earliest event of all on this thread
+    private double step()
+    {
+        Partition next = partitions[0];
+        for (Partition p : partitions)
+        {
+            if (p.events.peekTime() < next.events.peekTime())
+            {
+                next = p;
+            }
+        }
+        current.set(next);
+        try
+        {
+            runNext(next);
+        }
+        finally
+        {
+            current.remove();
+        }
+        return next.time;
+    }
+
+    private void runNext(Partition p)
+    {
+        Event e = p.events.removeNext();
+        p.time = e.getTime();
+        sim.trace.setTime(p.time);
+        if (sim.dispatch(e.getType(), e.getEntity(), e.getPacket()))
+        {
+            finished = true;
+        }
+    }
+
+    // Put this round's sends on the channel in simulated-time order
+    private void replay()
+    {
+        for (Partition p : partitions)
+        {
+            sends.addAll(p.sends);
+            p.sends.clear();
+        }
+        sends.sort(REPLAY_ORDER);
+        for (Send s : sends)
+        {
+            sim.trace.setTime(s.time);
+            sim.transmit(s.time, s.caller, s.destination, s.packet);
+        }
+        sends.clear();
+    }
+
+    private static RuntimeException propagate(Throwable t)
+    {
+        if (t instanceof RuntimeException)
+        {
+            return (RuntimeException)t;
+        }
+        if (t instanceof Error)
+        {
+            throw (Error)t;
+        }
+        return new IllegalStateException(t);
+    }
+
+    // Clock of the entity whose event is running on this thread
+    double now()
+    {
+        return current.get().time;
+    }
+
+    // Events of the given host.  Only that host's own events may touch
+    // its queue while a round runs.
+    EventList events(int entity)
+    {
+        Partition p = current.get();
+        if ((p != null) && (p.entity != entity))
+        {
+            throw new IllegalStateException("Host " + p.entity +
+                " cannot touch the events of host " + entity +
+                " in the parallel engine");
+        }
+        return partitions[entity].events;
+    }
+
+    void schedule(double t, int type, int entity, Packet packet)
+    {
+        events(entity).add(Event.wrap(t, type, entity, packet));
+    }
+
+    void send(int caller, int destination, Packet packet)
+    {
+        Partition p = current.get();
+        p.sends.add(new Send(p.time, caller, destination, p.sends.size(),
+                             packet));
+    }
+
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (Partition p : partitions)
+        {
+            sb.append(p.entity).append(": ").append(p.events).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -4,10 +4,31 @@ public class Project {
     /**
      * 内部类 TeeOutputStream
      * 将数据写入两个 OutputStream，类似于 UNIX 的 "tee" 命令。
+     *
+     * 写入的数据先攒在内存缓冲区里，由后台线程成批写到两个输出流，
+     * 模拟线程不再为每次 println 做系统调用。内存占用有上限（两个缓冲区），
+     * 写得比后台线程快时写入方会等待。数据按写入顺序输出；
+     * 缓冲区空闲超过 LINGER_MILLIS 也会被写出，所以提示信息能及时出现在控制台。
+     * flush() 会等到此前写入的数据全部写出，JVM 退出时也会自动 flush。
      */
     public static class TeeOutputStream extends OutputStream {
+        private static final int BUFFER_SIZE = 64 * 1024;
+        private static final long LINGER_MILLIS = 50;
+
         private final OutputStream out1;
         private final OutputStream out2;
+        private final Thread writer;
+
+        // 以下字段都由 this 保护
+        private byte[] filling = new byte[BUFFER_SIZE];
+        private int count = 0;
+        private byte[] spare = new byte[BUFFER_SIZE];
+        private byte[] pending = null;
+        private int pendingCount = 0;
+        private long handedOff = 0;
+        private long written = 0;
+        private boolean closed = false;
+        private IOException failure = null;
 
         /**
          * 构造函数
@@ -18,40 +39,158 @@ public class Project {
         public TeeOutputStream(OutputStream out1, OutputStream out2) {
             this.out1 = out1;
             this.out2 = out2;
+            writer = new Thread(this::drain, "tee-writer");
+            writer.setDaemon(true);
+            writer.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    flush();
+                } catch (IOException ignored) {
+                    // 退出时无处报告
+                }
+            }));
         }
 
         @Override
-        public void write(int b) throws IOException {
-            out1.write(b);
-            out2.write(b);
+        public synchronized void write(int b) throws IOException {
+            check();
+            if (count == filling.length) {
+                handOff();
+            }
+            filling[count++] = (byte) b;
         }
 
         @Override
         public void write(byte[] b) throws IOException {
-            out1.write(b);
-            out2.write(b);
+            write(b, 0, b.length);
         }
 
         @Override
-        public void write(byte[] b, int off, int len) throws IOException {
-            out1.write(b, off, len);
-            out2.write(b, off, len);
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            check();
+            while (len > 0) {
+                if (count == filling.length) {
+                    handOff();
+                }
+                int n = Math.min(len, filling.length - count);
+                System.arraycopy(b, off, filling, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
         }
 
+        /**
+         * 等到此前写入的数据都已写到两个输出流。
+         */
         @Override
-        public void flush() throws IOException {
-            out1.flush();
-            out2.flush();
+        public synchronized void flush() throws IOException {
+            check();
+            if (count > 0) {
+                handOff();
+            }
+            long target = handedOff;
+            while (written < target && failure == null) {
+                waitUninterruptibly(0);
+            }
+            check();
         }
 
         @Override
         public void close() throws IOException {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                flush();
+                closed = true;
+                notifyAll();
+            }
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
             try {
                 out1.close();
             } finally {
                 out2.close();
             }
         }
+
+        private void check() throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+        }
+
+        // 把正在填充的缓冲区交给后台线程；调用者持有锁
+        private void handOff() {
+            while (pending != null || spare == null) {
+                waitUninterruptibly(0);
+            }
+            pending = filling;
+            pendingCount = count;
+            filling = spare;
+            spare = null;
+            count = 0;
+            handedOff++;
+            notifyAll();
+        }
+
+        private void waitUninterruptibly(long millis) {
+            try {
+                wait(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // 后台线程：按顺序把交来的缓冲区写到两个输出流
+        private void drain() {
+            while (true) {
+                byte[] buf;
+                int n;
+                synchronized (this) {
+                    while (pending == null && !closed) {
+                        waitUninterruptibly(LINGER_MILLIS);
+                        if (pending == null && count > 0) {
+                            // 空闲了一段时间，把零散的数据也写出去
+                            handOff();
+                        }
+                    }
+                    if (pending == null) {
+                        return;
+                    }
+                    buf = pending;
+                    n = pendingCount;
+                    pending = null;
+                    notifyAll();
+                }
+
+                IOException error = null;
+                try {
+                    out1.write(buf, 0, n);
+                    out1.flush();
+                    out2.write(buf, 0, n);
+                    out2.flush();
+                } catch (IOException e) {
+                    error = e;
+                }
+
+                synchronized (this) {
+                    spare = buf;
+                    written++;
+                    if (error != null && failure == null) {
+                        failure = error;
+                    }
+                    notifyAll();
+                }
+            }
+        }
     }
 
     public final static void main(String[] argv) {
@@ -272,5 +411,6 @@ public class Project {
                 trace, seed, windowsize, timeout);
 
         simulator.runSimulator();
+        System.out.flush();
     }
 }
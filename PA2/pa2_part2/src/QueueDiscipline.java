@@ -0,0 +1,20 @@
+import java.util.function.DoubleSupplier;
+
+// Decides which packets a queued link drops.  The link serves packets
+// first come, first served, so every packet's wait is known as soon as
+// it joins the queue; enqueue() is asked whether it may join and
+// dequeue() whether it is sent once it reaches the head.  Both are
+// called in arrival order, which for a FIFO queue is also the order the
+// packets reach the head.
+public interface QueueDiscipline
+{
+    // A packet arrives at time now and finds queued packets in the queue,
+    // including any being sent; the last of them leaves at lastDeparture.
+    // random draws U(0, 1) for probabilistic disciplines.
+    public boolean enqueue(double now, int queued, double lastDeparture,
+                           DoubleSupplier random);
+
+    // The packet reaches the head at time now after waiting sojourn.
+    // Returning false drops it without using the link.
+    public boolean dequeue(double now, double sojourn);
+}
@@ -0,0 +1,36 @@
+/**
+ * Builds QueueDiscipline implementations from the short names used in
+ * topology files and on command lines.
+ */
+public class QueueDisciplines {
+    public static final String NAMES = "droptail, red, codel";
+
+    // CoDel's target and interval in simulated time units, the RFC 8289
+    // defaults read as milliseconds
+    public static final double CODEL_TARGET = 5;
+    public static final double CODEL_INTERVAL = 100;
+
+    private QueueDisciplines() {
+    }
+
+    /**
+     * A discipline for a buffer of capacity packets on a link that takes
+     * serviceTime to send a typical packet.
+     */
+    public static QueueDiscipline create(String name, int capacity, double serviceTime) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1");
+        }
+        switch (name) {
+            case "droptail":
+                return new DropTailQueue(capacity);
+            case "red":
+                return RedQueue.forCapacity(capacity, serviceTime);
+            case "codel":
+                return new CoDelQueue(capacity, CODEL_TARGET, CODEL_INTERVAL);
+            default:
+                throw new IllegalArgumentException("Unknown queue discipline: " + name
+                        + " (expected one of " + NAMES + ")");
+        }
+    }
+}
@@ -0,0 +1,30 @@
+// The random numbers behind a simulation, as independent streams, one
+// per purpose, so that changing how often one purpose draws does not
+// shift the numbers any other sees.
+public interface RandomSource
+{
+    // The streams
+    public static final int ARRIVALS = 0;
+    public static final int LOSS = 1;
+    public static final int DELAY = 2;
+    public static final int CORRUPTION = 3;
+    public static final int CORRUPTION_KIND = 4;
+    public static final int QUEUE = 5;
+    public static final int STREAMS = 6;
+
+    // The next number from a stream, uniform on [0, 1]
+    public double nextDouble(int stream);
+
+    // The state of every stream, for checkpoints; setState() takes back
+    // an array from getState() of the same kind of source
+    public long[] getState();
+
+    public void setState(long[] state);
+
+    // An independent copy that will produce the same numbers
+    public RandomSource copy();
+
+    // A source whose streams do not overlap this one's, for another
+    // replication of the same simulation
+    public RandomSource split();
+}
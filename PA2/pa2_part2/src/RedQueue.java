@@ -0,0 +1,86 @@
+import java.util.function.DoubleSupplier;
+
+// Random Early Detection (Floyd and Jacobson, 1993).  The average queue
+// length is an EWMA of the length seen by arrivals, decayed over idle
+// periods as if packets of serviceTime had kept arriving to an empty
+// queue.  Below minThreshold nothing is dropped; between the thresholds
+// arrivals are dropped with a probability rising to maxProbability and
+// spread out by the count since the last drop; above maxThreshold, and
+// whenever the buffer is full, every arrival is dropped.
+public class RedQueue implements QueueDiscipline
+{
+    private final int capacity;
+    private final double minThreshold;
+    private final double maxThreshold;
+    private final double maxProbability;
+    private final double weight;
+    private final double serviceTime;
+
+    private double average;
+    private int count = -1;
+
+    public RedQueue(int capacity, double minThreshold, double maxThreshold,
+                    double maxProbability, double weight, double serviceTime)
+    {
+        this.capacity = capacity;
+        this.minThreshold = minThreshold;
+        this.maxThreshold = maxThreshold;
+        this.maxProbability = maxProbability;
+        this.weight = weight;
+        this.serviceTime = serviceTime;
+    }
+
+    // The usual settings for a buffer of the given size: thresholds at a
+    // quarter and three quarters of it, max_p 0.1 and w_q 0.002
+    public static RedQueue forCapacity(int capacity, double serviceTime)
+    {
+        return new RedQueue(capacity, capacity / 4.0, capacity * 3 / 4.0,
+                            0.1, 0.002, serviceTime);
+    }
+
+    public boolean enqueue(double now, int queued, double lastDeparture,
+                           DoubleSupplier random)
+    {
+        if (queued > 0)
+        {
+            average = (1 - weight) * average + weight * queued;
+        }
+        else
+        {
+            double idle = Math.max(now - lastDeparture, 0) / serviceTime;
+            average = Math.pow(1 - weight, idle) * average;
+        }
+
+        if (queued >= capacity)
+        {
+            count = 0;
+            return false;
+        }
+        if (average < minThreshold)
+        {
+            count = -1;
+            return true;
+        }
+        if (average >= maxThreshold)
+        {
+            count = 0;
+            return false;
+        }
+
+        count++;
+        double pb = maxProbability * (average - minThreshold) /
+            (maxThreshold - minThreshold);
+        double pa = (count * pb >= 1) ? 1 : pb / (1 - count * pb);
+        if (random.getAsDouble() < pa)
+        {
+            count = 0;
+            return false;
+        }
+        return true;
+    }
+
+    public boolean dequeue(double now, double sojourn)
+    {
+        return true;
+    }
+}
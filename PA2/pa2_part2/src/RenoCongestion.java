@@ -0,0 +1,125 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// TCP Reno (RFC 5681) and NewReno (RFC 6582) in packets.  The window
+// starts at one packet and grows by one per packet acknowledged up to
+// the slow start threshold, then by one per window (AIMD).  A fast
+// retransmit halves the flight into the threshold and enters fast
+// recovery, in which duplicate ACKs inflate the window by a packet each;
+// a timeout also halves it and goes back to slow start from one packet.
+//
+// Recovery ends when the packets in flight at the loss have all been
+// acknowledged.  Reno leaves it at the first ACK of new data; NewReno
+// stays on partial ACKs, deflating the window by what they acknowledged,
+// so that several losses in one window cost a single reduction.
+//
+// The sender here may fast retransmit on the first duplicate ACK rather
+// than the third, so the window is set to the threshold on entering
+// recovery, without the three packets RFC 5681 adds back.
+public class RenoCongestion implements CongestionControl
+{
+    private final boolean newReno;
+    private final int maxWindow;
+
+    private double cwnd = 1;
+    private double ssthresh;
+    private boolean recovering = false;
+    // Packets still to be acknowledged before recovery ends
+    private int recover = 0;
+
+    public RenoCongestion(int maxWindow, boolean newReno)
+    {
+        this.maxWindow = maxWindow;
+        this.newReno = newReno;
+        ssthresh = maxWindow;
+    }
+
+    public String getName()
+    {
+        return newReno ? "newreno" : "reno";
+    }
+
+    public double window()
+    {
+        return cwnd;
+    }
+
+    public double threshold()
+    {
+        return ssthresh;
+    }
+
+    public void onAck(double now, int acked, int flight)
+    {
+        if (recovering)
+        {
+            recover -= acked;
+            if (newReno && (recover > 0))
+            {
+                // Partial ACK: the next hole is resent by the sender
+                cwnd = Math.max(cwnd - acked + 1, 1);
+                return;
+            }
+            recovering = false;
+            cwnd = ssthresh;
+            return;
+        }
+
+        if (cwnd < ssthresh)
+        {
+            // Slow start
+            cwnd = Math.min(cwnd + acked, Math.max(ssthresh, 1));
+        }
+        else
+        {
+            // Congestion avoidance
+            cwnd += (double)acked / cwnd;
+        }
+        cwnd = Math.min(cwnd, maxWindow);
+    }
+
+    public void onDuplicateAck(double now, int flight)
+    {
+        if (recovering)
+        {
+            cwnd = Math.min(cwnd + 1, maxWindow);
+        }
+    }
+
+    public void onFastRetransmit(double now, int flight)
+    {
+        if (recovering)
+        {
+            return;
+        }
+        ssthresh = Math.max(flight / 2.0, 2);
+        cwnd = ssthresh;
+        recovering = true;
+        recover = flight;
+    }
+
+    public void onTimeout(double now, int flight)
+    {
+        ssthresh = Math.max(flight / 2.0, 2);
+        cwnd = 1;
+        recovering = false;
+        recover = 0;
+    }
+
+    public void save(DataOutputStream cp) throws IOException
+    {
+        cp.writeDouble(cwnd);
+        cp.writeDouble(ssthresh);
+        cp.writeBoolean(recovering);
+        cp.writeInt(recover);
+    }
+
+    public void restore(DataInputStream cp) throws IOException
+    {
+        cwnd = cp.readDouble();
+        ssthresh = cp.readDouble();
+        recovering = cp.readBoolean();
+        recover = cp.readInt();
+    }
+}
@@ -0,0 +1,293 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs independent replications of one StudentNetworkSimulator
+ * configuration in parallel and reports every statistic with a Student-t
+ * confidence interval.
+ *
+ * Replications are started in order, no more at once than there are
+ * threads, and are taken back in the same order.  After each one the
+ * target statistics are checked, and the run stops as soon as every
+ * target's interval half-width is within the requested fraction of its
+ * mean (after a minimum number of replications) or the maximum is
+ * reached.  The decision only looks at the first n replications, so the
+ * result does not depend on the number of threads; at most threads - 1
+ * replications are wasted when it stops.
+ *
+ * Arguments are {@code key=value}: nsim, loss, corrupt, delay, window,
+ * timeout, seed, protocol, congestion and rto as for SweepRunner (one
+ * value each), and {@code random=split|osi}, {@code precision=},
+ * {@code confidence=}, {@code min=}, {@code max=}, {@code threads=},
+ * {@code target=} (a comma separated list of
+ * {@link SimulationResult#header()} columns) and {@code out=FILE} for the
+ * table (default stdout).
+ *
+ * With random=split (the default) replication k is driven by the k'th
+ * {@link SplitRandom#split()} of a generator seeded with seed, so the
+ * replications' random streams never overlap.  With random=osi it uses
+ * OSIRandom seeded with seed + k * RandomSource.STREAMS, so that no two
+ * replications start a stream from the same seed.
+ */
+public class ReplicationRunner {
+    private static final String[] COLUMNS = SimulationResult.header().split("\t");
+
+    /**
+     * Mean and variance of a statistic over the replications, skipping
+     * replications where it was undefined (NaN).
+     */
+    static class Summary {
+        private final RunningStats stats = new RunningStats();
+
+        void add(double x) {
+            if (!Double.isNaN(x) && !Double.isInfinite(x)) {
+                stats.add(x);
+            }
+        }
+
+        long count() {
+            return stats.count();
+        }
+
+        double mean() {
+            return stats.mean();
+        }
+
+        double standardDeviation() {
+            return stats.standardDeviation();
+        }
+
+        /**
+         * Half-width of the two-sided confidence interval for the mean.
+         */
+        double halfWidth(double confidence) {
+            long n = stats.count();
+            if (n < 2) {
+                return Double.NaN;
+            }
+            double t = StudentT.quantile((1 + confidence) / 2, n - 1);
+            return t * standardDeviation() / Math.sqrt(n);
+        }
+    }
+
+    private final SweepRunner.Point point;
+    private final boolean split;
+    private final double precision;
+    private final double confidence;
+    private final int min;
+    private final int max;
+    private final int[] targets;
+
+    private final Summary[] summaries = new Summary[COLUMNS.length];
+    private int replications;
+
+    public ReplicationRunner(SweepRunner.Point point, boolean split, double precision,
+                             double confidence, int min, int max, int[] targets) {
+        this.point = point;
+        this.split = split;
+        this.precision = precision;
+        this.confidence = confidence;
+        this.min = Math.max(min, 2);
+        this.max = Math.max(max, this.min);
+        this.targets = targets;
+        for (int i = 0; i < summaries.length; i++) {
+            summaries[i] = new Summary();
+        }
+    }
+
+    /**
+     * Run replications on threads threads until the targets are precise
+     * enough or max have run.  Returns whether the precision was reached.
+     */
+    public boolean run(int threads) throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        RandomSource root = split ? new SplitRandom(point.seed) : null;
+        Deque<Future<SimulationResult>> inFlight = new ArrayDeque<>();
+        int started = 0;
+        try {
+            while (replications < max) {
+                while (started < max && inFlight.size() < threads) {
+                    RandomSource source = split ? root.split()
+                            : new OSIRandom(point.seed + started * RandomSource.STREAMS);
+                    inFlight.add(pool.submit(() -> runOne(source)));
+                    started++;
+                }
+
+                double[] values = inFlight.poll().get().toArray();
+                for (int i = 0; i < values.length; i++) {
+                    summaries[i].add(values[i]);
+                }
+                replications++;
+                if (replications >= min && precise()) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            for (Future<SimulationResult> f : inFlight) {
+                f.cancel(false);
+            }
+            pool.shutdown();
+        }
+    }
+
+    private boolean precise() {
+        for (int t : targets) {
+            Summary s = summaries[t];
+            double h = s.halfWidth(confidence);
+            if (!(h <= precision * Math.abs(s.mean()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private SimulationResult runOne(RandomSource source) {
+        SweepRunner.Point p = point;
+        StudentNetworkSimulator simulator = p.simulator(new EventStore());
+        simulator.setRandomSource(source);
+        simulator.setDeliveryFile(null);
+        try (PrintStream ps = new PrintStream(OutputStream.nullOutputStream())) {
+            simulator.setOutput(ps);
+            simulator.runSimulator();
+        }
+        return simulator.getResult();
+    }
+
+    public int getReplications() {
+        return replications;
+    }
+
+    public void write(PrintStream table) {
+        table.println("statistic\tn\tmean\tstd_dev\thalf_width\trelative\tlower\tupper");
+        for (int i = 0; i < COLUMNS.length; i++) {
+            Summary s = summaries[i];
+            double h = s.halfWidth(confidence);
+            table.println(COLUMNS[i] + "\t" + s.count() + "\t" + s.mean()
+                    + "\t" + s.standardDeviation() + "\t" + h
+                    + "\t" + h / Math.abs(s.mean())
+                    + "\t" + (s.mean() - h) + "\t" + (s.mean() + h));
+        }
+    }
+
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("usage: java ReplicationRunner [key=value]... "
+                + "[random=split|osi] [precision=0.05] [confidence=0.95] [min=5] "
+                + "[max=200] [threads=N] [target=avg_rtt,avg_comm_time] [out=FILE]");
+        System.err.println("keys: nsim, loss, corrupt, delay, window, timeout, seed, protocol, congestion, rto");
+        System.err.println("targets: " + String.join(", ", COLUMNS));
+        System.exit(1);
+    }
+
+    private static int column(String name) {
+        int i = Arrays.asList(COLUMNS).indexOf(name);
+        if (i < 0) {
+            usage("Unknown statistic: " + name);
+        }
+        return i;
+    }
+
+    public static void main(String[] argv) {
+        Map<String, List<String>> axes = new HashMap<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean split = true;
+        double precision = 0.05;
+        double confidence = 0.95;
+        int min = 5;
+        int max = 200;
+        String target = "avg_rtt,avg_comm_time";
+        String outName = null;
+
+        try {
+            for (String arg : argv) {
+                int eq = arg.indexOf('=');
+                if (eq <= 0) {
+                    usage("Bad argument: " + arg);
+                }
+                String key = arg.substring(0, eq);
+                String value = arg.substring(eq + 1);
+
+                switch (key) {
+                    case "threads":
+                        threads = Integer.parseInt(value);
+                        break;
+                    case "random":
+                        if (!value.equals("split") && !value.equals("osi")) {
+                            usage("Unknown random source: " + value);
+                        }
+                        split = value.equals("split");
+                        break;
+                    case "precision":
+                        precision = Double.parseDouble(value);
+                        break;
+                    case "confidence":
+                        confidence = Double.parseDouble(value);
+                        break;
+                    case "min":
+                        min = Integer.parseInt(value);
+                        break;
+                    case "max":
+                        max = Integer.parseInt(value);
+                        break;
+                    case "target":
+                        target = value;
+                        break;
+                    case "out":
+                        outName = value;
+                        break;
+                    case "nsim": case "loss": case "corrupt": case "delay":
+                    case "window": case "timeout": case "seed": case "protocol":
+                    case "congestion": case "rto":
+                        axes.put(key, Collections.singletonList(value));
+                        break;
+                    default:
+                        usage("Unknown key: " + key);
+                }
+            }
+        } catch (NumberFormatException nfe) {
+            usage("Bad number: " + nfe.getMessage());
+        }
+        if (!(confidence > 0 && confidence < 1)) {
+            usage("confidence must be between 0 and 1");
+        }
+
+        String[] names = target.split(",");
+        int[] targets = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            targets[i] = column(names[i]);
+        }
+
+        SweepRunner.Point point = null;
+        try {
+            point = SweepRunner.grid(axes).get(0);
+        } catch (NumberFormatException nfe) {
+            usage("Bad number: " + nfe.getMessage());
+        } catch (IllegalArgumentException iae) {
+            usage(iae.getMessage());
+        }
+
+        ReplicationRunner runner = new ReplicationRunner(point, split, precision,
+                confidence, min, max, targets);
+        try {
+            long start = System.nanoTime();
+            boolean reached = runner.run(threads);
+            PrintStream table = outName == null ? System.out : new PrintStream(
+                    new BufferedOutputStream(new FileOutputStream(outName)));
+            runner.write(table);
+            table.flush();
+            if (table != System.out) {
+                table.close();
+            }
+            System.out.println("Ran " + runner.getReplications() + " replications on "
+                    + threads + " threads in " + (System.nanoTime() - start) / 1000000
+                    + " ms; " + (reached ? "" : "did not reach ") + "relative precision "
+                    + precision + " at confidence " + confidence + " for " + target);
+        } catch (IOException | InterruptedException | ExecutionException e) {
+            System.err.println("Replications failed: " + e);
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
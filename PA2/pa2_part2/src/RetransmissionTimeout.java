@@ -0,0 +1,111 @@
+import java.io.*;
+
+/**
+ * An adaptive retransmission timeout, computed as in RFC 6298 from
+ * Jacobson and Karels' smoothed round trip time and its mean deviation.
+ *
+ * The first sample R sets SRTT = R and RTTVAR = R / 2; later ones move
+ * RTTVAR a quarter of the way to |SRTT - R| and SRTT an eighth of the
+ * way to R.  The timeout is SRTT + 4 * RTTVAR, kept within
+ * [min, max].  Each expiry doubles it, up to MAX_BACKOFF times in a
+ * row, and the next sample recomputes it and starts the count again.
+ * Callers apply Karn's rule by sampling only packets that were sent
+ * once, so under loss a sample may be long in coming; the cap keeps the
+ * timeout within a few round trips of the path meanwhile rather than
+ * letting it climb to max.
+ */
+public class RetransmissionTimeout {
+    public static final double DEFAULT_MIN = 1;
+    public static final double DEFAULT_MAX = 1000;
+
+    private static final double ALPHA = 1.0 / 8;
+    private static final double BETA = 1.0 / 4;
+    private static final double K = 4;
+    private static final int MAX_BACKOFF = 3;
+
+    private final double min;
+    private final double max;
+    private boolean sampled;
+    private double srtt;
+    private double rttvar;
+    private double base; // The timeout before backing off
+    private int backedOff; // Expiries since the last sample, up to MAX_BACKOFF
+    private int backoffs;
+
+    /**
+     * A timeout starting at initial, before any sample, and kept within
+     * [min, max].
+     */
+    public RetransmissionTimeout(double initial, double min, double max) {
+        if (!(min > 0) || !(max >= min)) {
+            throw new IllegalArgumentException("Need 0 < min <= max for the timeout");
+        }
+        this.min = min;
+        this.max = max;
+        base = initial;
+    }
+
+    public void sample(double rtt) {
+        if (!sampled) {
+            srtt = rtt;
+            rttvar = rtt / 2;
+            sampled = true;
+        } else {
+            rttvar = (1 - BETA) * rttvar + BETA * Math.abs(srtt - rtt);
+            srtt = (1 - ALPHA) * srtt + ALPHA * rtt;
+        }
+        base = srtt + K * rttvar;
+        backedOff = 0;
+    }
+
+    /**
+     * Double the timeout after it expired.
+     */
+    public void backOff() {
+        if (backedOff < MAX_BACKOFF) {
+            backedOff++;
+        }
+        backoffs++;
+    }
+
+    public double current() {
+        return clamp(base * (1 << backedOff));
+    }
+
+    /**
+     * The smoothed round trip time, or NaN before any sample.
+     */
+    public double smoothedRtt() {
+        return sampled ? srtt : Double.NaN;
+    }
+
+    public double rttVariation() {
+        return sampled ? rttvar : Double.NaN;
+    }
+
+    public int backoffs() {
+        return backoffs;
+    }
+
+    private double clamp(double t) {
+        return Math.max(min, Math.min(max, t));
+    }
+
+    void save(DataOutputStream cp) throws IOException {
+        cp.writeBoolean(sampled);
+        cp.writeDouble(srtt);
+        cp.writeDouble(rttvar);
+        cp.writeDouble(base);
+        cp.writeInt(backedOff);
+        cp.writeInt(backoffs);
+    }
+
+    void restore(DataInputStream cp) throws IOException {
+        sampled = cp.readBoolean();
+        srtt = cp.readDouble();
+        rttvar = cp.readDouble();
+        base = cp.readDouble();
+        backedOff = cp.readInt();
+        backoffs = cp.readInt();
+    }
+}
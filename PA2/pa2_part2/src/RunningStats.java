@@ -0,0 +1,69 @@
+import java.io.*;
+
+/**
+ * Count, mean, variance, minimum and maximum of a stream of values, kept
+ * in constant space with Welford's update, which stays accurate where
+ * summing squares would cancel.
+ */
+public class RunningStats {
+    private long n;
+    private double mean;
+    private double m2;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public void add(double x) {
+        n++;
+        double delta = x - mean;
+        mean += delta / n;
+        m2 += delta * (x - mean);
+        min = Math.min(min, x);
+        max = Math.max(max, x);
+    }
+
+    public long count() {
+        return n;
+    }
+
+    /**
+     * The mean, or NaN before any values.
+     */
+    public double mean() {
+        return n > 0 ? mean : Double.NaN;
+    }
+
+    /**
+     * The sample variance, or NaN with fewer than two values.
+     */
+    public double variance() {
+        return n > 1 ? m2 / (n - 1) : Double.NaN;
+    }
+
+    public double standardDeviation() {
+        return Math.sqrt(variance());
+    }
+
+    public double min() {
+        return n > 0 ? min : Double.NaN;
+    }
+
+    public double max() {
+        return n > 0 ? max : Double.NaN;
+    }
+
+    void save(DataOutputStream cp) throws IOException {
+        cp.writeLong(n);
+        cp.writeDouble(mean);
+        cp.writeDouble(m2);
+        cp.writeDouble(min);
+        cp.writeDouble(max);
+    }
+
+    void restore(DataInputStream cp) throws IOException {
+        n = cp.readLong();
+        mean = cp.readDouble();
+        m2 = cp.readDouble();
+        min = cp.readDouble();
+        max = cp.readDouble();
+    }
+}
@@ -0,0 +1,617 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * The selective-acknowledgement protocol this simulator was written for.
+ *
+ * A keeps a window of WindowSize packets and one timer, restarted with
+ * every packet sent.  B buffers packets that arrive out of order and
+ * ACKs cumulatively, listing up to the last five out-of-order packets it
+ * holds in the ACK's SACK field.  A drops SACKed packets from its window,
+ * resends the oldest unacknowledged packet when a SACK shows a gap in
+ * front of it, when an ACK repeats the last one exactly, or when the
+ * timer runs out.  New packets are sent while fewer than
+ * {@link #sendWindow()} are unacknowledged.  An adaptive timeout is fed
+ * the RTT of the packet whose arrival made B send the ACK, if it was sent
+ * once: the last one SACKed, or the one a cumulative ACK names when
+ * nothing it acknowledges was resent.
+ *
+ * With per-packet timers ("sack-timers"), A instead gives every
+ * unacknowledged packet its own timer on a {@link TimerWheel}, as
+ * {@link SelectiveRepeatProtocol} does, and resends each packet when its
+ * timer runs out.  Each timer backs off on its own, doubling for every
+ * time it has run out, up to 2^MAX_BACKOFF times, until its packet is
+ * acknowledged.  Only the oldest packet's timer running out counts as a
+ * timeout for the congestion window; any other counts as a fast
+ * retransmit.
+ */
+public class SackProtocol extends TransportProtocol {
+    private static final int TICKS_PER_TIMEOUT = 8;
+    private static final int WHEEL_SLOTS = 64;
+    private static final int MAX_BACKOFF = 3;
+    // Packets B lists in each SACK
+    private static final int SACK_LENGTH = 5;
+
+    private final boolean perPacketTimers;
+    private int currentSequenceNumber=0;
+
+    // Sender (A) state variables
+    private int base; // Sequence number of the oldest unacknowledged packet
+    private int nextSeqNum; // Next sequence number to use
+    // Indexed by sequence number: the packet, null once acknowledged,
+    // when it was sent, and whether it has been sent only once
+    private Packet[] window;
+    private double[] packetSendTime;
+    private boolean[] isPacketRetransmiision;
+    private Queue<Message> bufferA; // Buffer for A_output
+    private final int maxBufferSize = 100000000;
+    private int lastAck=-1;
+    private Deque<Integer> mostRecentAck;
+    // SACK list of the last ACK that was not a duplicate
+    private int[] lastReceiveAck;
+    private int lastReceiveAckLength;
+
+    // Receiver (B) state variables
+    private int expectedSeqNum; // Next expected sequence number
+    private Map<Integer, Packet> bufferB; // Buffer for out-of-order packets
+
+    // Timer
+    private boolean timerRunning;
+    private int duplicateAckCount;
+    // With per-packet timers: one per unacknowledged packet, the ones that
+    // ran out in the current tick, and how often each has run out
+    private TimerWheel timers;
+    private int[] expired;
+    private int[] backoffs;
+
+    // Trace statements
+    private static final int T_BUFFER_FULL = Trace.define(0, Trace.SENDER,
+            "Buffer full at sender. Aborting.");
+    private static final int T_BUFFERED = Trace.define(2, Trace.SENDER,
+            "Adding message to buffer, current size:{0}");
+    private static final int T_TRY_SEND = Trace.define(2, Trace.SENDER,
+            "Try to send message: packet {0}");
+    private static final int T_SENT = Trace.define(2, Trace.SENDER,
+            "A_output: Sent packet {0} current base {1}");
+    private static final int T_LAST_SACK = Trace.define(2, Trace.SENDER,
+            "last SACK:{o}");
+    private static final int T_DUP_ACK = Trace.define(1, Trace.SENDER,
+            "A_DuplicateInterrupt: duplicate ack. Try retransmit first unacknowledged packets.");
+    private static final int T_DUP_RETX = Trace.define(2, Trace.SENDER,
+            "A_DuplicateInterrupt: Retransmitted packet {0} current base: {1}");
+    private static final int T_CORRUPT_ACK = Trace.define(1, Trace.SENDER,
+            "A_input: Received corrupted ACK.");
+    private static final int T_ACK = Trace.define(2, Trace.SENDER,
+            "A_input: Received ACK {0} with SACK {o}");
+    private static final int T_SACK_REMOVE = Trace.define(2, Trace.SENDER,
+            "ackNum: {0} with SACK {o} remove:{1}");
+    private static final int T_WINDOW_SHIFT = Trace.define(2, Trace.SENDER,
+            "A_input: Received ACK {0} make window shift {1} current base: {2}");
+    private static final int T_ACK_REMOVE = Trace.define(2, Trace.SENDER,
+            "ackNum:{0} remove:{1}");
+    private static final int T_SACK_RETX = Trace.define(2, Trace.SENDER,
+            "Retransmitted packet {0} current base: {1}");
+    private static final int T_RETX_COUNT = Trace.define(2, Trace.SENDER,
+            "{0}");
+    private static final int T_TIMEOUT = Trace.define(1, Trace.TIMER,
+            "A_timerInterrupt: Timer expired. Retransmitting first unacknowledged packets.");
+    private static final int T_TIMERS_EXPIRED = Trace.define(1, Trace.TIMER,
+            "A_timerInterrupt: {0} packet timers expired.");
+    private static final int T_TIMEOUT_RETX = Trace.define(2, Trace.TIMER,
+            "A_timerInterrupt: Retransmitted packet {0} current base: {1}");
+    private static final int T_B_PAYLOAD = Trace.define(2, Trace.RECEIVER,
+            "B_input: Received packet with payload:{o} checkSum: {0}");
+    private static final int T_B_CORRUPT = Trace.define(1, Trace.RECEIVER,
+            "B_input: Received corrupted packet.");
+    private static final int T_B_RECEIVED = Trace.define(2, Trace.RECEIVER,
+            "B_input: Received packet {0}");
+    private static final int T_B_SACK_ADD = Trace.define(2, Trace.RECEIVER,
+            "B_input: Add number{0} to SACK");
+    private static final int T_B_DELIVERED = Trace.define(2, Trace.RECEIVER,
+            "B_input: Delivered packet {0} to layer5 and sent ACK.");
+    private static final int T_B_SHIFT = Trace.define(2, Trace.RECEIVER,
+            "B_input: Received Packet {0} make window shift {1} current base: {2}");
+    private static final int T_B_BUFFERED = Trace.define(2, Trace.RECEIVER,
+            "B_input: Buffered out-of-order packet {0}");
+    private static final int T_B_DUPLICATE = Trace.define(2, Trace.RECEIVER,
+            "B_input: Received duplicate or out-of-window packet {0}. Resent ACK.");
+    private static final int T_B_ACK = Trace.define(2, Trace.RECEIVER,
+            "B_input: Sent ACK {0} SACK {o}");
+
+    public SackProtocol() {
+        this(false);
+    }
+
+    /**
+     * The protocol with a timer per packet rather than a single one.
+     */
+    public SackProtocol(boolean perPacketTimers) {
+        this.perPacketTimers = perPacketTimers;
+    }
+
+    @Override
+    public String getName() {
+        return perPacketTimers ? "sack-timers" : "sack";
+    }
+
+    // Initialize sender (A)
+    protected void aInit() {
+        base = FirstSeqNo;
+        nextSeqNum = FirstSeqNo;
+        window = new Packet[LimitSeqNo];
+        bufferA = new LinkedList<>();
+        packetSendTime = new double[LimitSeqNo];
+        lastReceiveAck = new int[SACK_LENGTH];
+        lastReceiveAckLength = 0;
+        isPacketRetransmiision = new boolean[LimitSeqNo];
+        timerRunning = false;
+        duplicateAckCount = 0;
+        if (perPacketTimers) {
+            timers = newTimers();
+            expired = new int[LimitSeqNo];
+            backoffs = new int[LimitSeqNo];
+        }
+    }
+
+    private TimerWheel newTimers() {
+        return new TimerWheel(LimitSeqNo, WHEEL_SLOTS, RxmtInterval / TICKS_PER_TIMEOUT);
+    }
+
+    // Initialize receiver (B)
+    protected void bInit() {
+        expectedSeqNum = FirstSeqNo;
+        bufferB = new HashMap<>();
+        mostRecentAck =  new ArrayDeque<>();
+    }
+
+    // Sender: Handle new message from layer5
+    protected void aOutput(Message message) {
+        if (bufferA.size() >= maxBufferSize) {
+            trace().log(T_BUFFER_FULL);
+            trace().close();
+            System.exit(1);
+        }
+
+        // Create a copy of the message and enqueue it
+        Message msgCopy = message.isBinary() ? new Message(message.getBytes())
+                : new Message(message.getData());
+        bufferA.offer(msgCopy);
+        trace().log(T_BUFFERED, bufferA.size());
+        // Attempt to send packets within the window
+        sendPackets();
+    }
+
+    // Number of packets sent and not yet cumulatively acknowledged
+    private int flight() {
+        return (nextSeqNum - base + LimitSeqNo) % LimitSeqNo;
+    }
+
+    // Sender: Attempt to send packets within the window
+    private void sendPackets() {
+        trace().log(T_TRY_SEND, nextSeqNum);
+        while (flight() < sendWindow() && !bufferA.isEmpty()) {
+            // Create packet with sequence number, no ack, checksum, and payload
+            Packet pkt = makePacket(nextSeqNum, bufferA.poll());
+            // Add packet to the window
+            window[nextSeqNum] = pkt;
+            packetSendTime[nextSeqNum] = getTime();
+            isPacketRetransmiision[nextSeqNum] = true;
+            toLayer3(A, pkt);
+            originalPackets++;
+            trace().log(T_SENT, pkt.getSeqnum(), base);
+
+            // Start timer if it's the first packet in the window
+            if (base == nextSeqNum && !timerRunning) {
+                timerRunning = true;
+            }
+
+            // Increment nextSeqNum with wrap-around
+            int seq = nextSeqNum;
+            nextSeqNum = (nextSeqNum + 1) % LimitSeqNo;
+            restartTimer(seq);
+        }
+    }
+
+    // Restart the timer after seq was sent: the single timer, or seq's own
+    private void restartTimer(int seq) {
+        if (perPacketTimers) {
+            if (timers.schedule(seq, getTime(), rto() * (1 << backoffs[seq]))) {
+                startTimer(A, timers.tick());
+            }
+        } else {
+            stopTimer(A);
+            startTimer(A, rto());
+        }
+    }
+
+    // Drop seq, acknowledged, from the window
+    private void remove(int seq) {
+        window[seq] = null;
+        if (perPacketTimers) {
+            timers.cancel(seq);
+            backoffs[seq] = 0;
+        }
+    }
+
+    // Sender: Handle incoming ACK packet
+    private boolean checkDuplicate(int ackNum,Packet packet){
+        boolean duplicate = true;
+        if (trace().enabled(T_LAST_SACK)) {
+            trace().log(T_LAST_SACK, Arrays.toString(Arrays.copyOf(lastReceiveAck, lastReceiveAckLength)));
+        }
+        List<Integer> sack = packet.getMostRecentAck();
+        if (lastReceiveAckLength == sack.size()){
+            for (int i = 0; i < lastReceiveAckLength; i++) {
+                if (lastReceiveAck[i] != sack.get(i)) {
+                   duplicate =  false;
+                   break;
+                }
+            }
+        }else{
+            duplicate = false;
+        }
+        if (packet.getAcknum() != lastAck){
+            duplicate = false;
+        }
+        if (duplicate){
+            duplicateAckCount+=1;
+            congestionDuplicateAck(flight());
+            if (duplicateAckCount >=1){
+                trace().log(T_DUP_ACK);
+                Packet pkt = window[base];
+                if (pkt == null){
+                    return true;
+                }
+                congestionFastRetransmit(flight());
+                // Retransmit all packets in the window
+                toLayer3(A, pkt);
+                retransmissions++;
+                trace().log(T_DUP_RETX, pkt.getSeqnum(), base);
+                isPacketRetransmiision[pkt.getSeqnum()] = false;
+                restartTimer(pkt.getSeqnum());
+                return true;
+            }
+        }else{
+            lastAck = ackNum;
+            duplicateAckCount = 0;
+            if (sack.size() > lastReceiveAck.length) {
+                lastReceiveAck = new int[sack.size()];
+            }
+            lastReceiveAckLength = sack.size();
+            for (int i = 0; i < lastReceiveAckLength; i++) {
+                lastReceiveAck[i] = sack.get(i);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    protected void aInput(Packet packet) {
+        if (isCorrupted(packet)) {
+            corruptedPackets++;
+            trace().log(T_CORRUPT_ACK);
+            return;
+        }
+
+        int ackNum = packet.getAcknum();
+        trace().log(T_ACK, ackNum, packet.getMostRecentAck());
+        if (checkDuplicate(ackNum,packet)){
+            return;
+        }
+        int min1 = 100000000;
+        List<Integer> sack = packet.getMostRecentAck();
+        if (sack != null){
+            // B lists the packet that made it send this ACK last
+            Integer trigger = sack.isEmpty() ? null : sack.get(sack.size() - 1);
+            for (Integer element : sack) {
+                int seq = element;
+                if (window[seq] == null) {
+                    continue;
+                }
+                trace().log(T_SACK_REMOVE, ackNum, seq, sack);
+                remove(seq);
+                if (min1>seq){
+                    min1 = seq;
+                }
+                if (seq == ackNum){
+                    sampleRoundTrip(packetSendTime[seq], isPacketRetransmiision[seq]);
+                } else if (isPacketRetransmiision[seq] && element.equals(trigger)) {
+                    sampleTimeout(packetSendTime[seq]);
+                }
+            }
+        }
+        // Check if ACK is within the window
+        if (isInWindow(ackNum)) {
+            int oldBase = base;
+            int move = base;
+            base = ackNum+1;
+            base = base%LimitSeqNo;
+            if (move>base){
+                move = base+LimitSeqNo-move;
+            }else{
+                move = base-move;
+            }
+            trace().log(T_WINDOW_SHIFT, ackNum, move, base);
+            congestionAck(move, flight());
+            // Stop the timer if all packets are acknowledged; the wheel
+            // stops by itself once their timers are cancelled
+            if (base == nextSeqNum && !perPacketTimers) {
+                stopTimer(A);
+                timerRunning = false;
+            }
+            // Remove acknowledged packets from the window: those from the
+            // old base up to ackNum, wrapping round after LimitSeqNo - 1.
+            // A slot left behind would be resent as new data when base
+            // comes round to it again.
+            int end = (ackNum + 1) % LimitSeqNo;
+            boolean ambiguous = false;
+            for (int seq = oldBase; seq != end; seq = (seq + 1) % LimitSeqNo) {
+                if (window[seq] != null) {
+                    ambiguous |= !isPacketRetransmiision[seq];
+                }
+            }
+            if (window[ackNum] != null) {
+                sampleRoundTrip(packetSendTime[ackNum], isPacketRetransmiision[ackNum]);
+                // A resent packet may have filled the gap and made B send this
+                if (!ambiguous) {
+                    sampleTimeout(packetSendTime[ackNum]);
+                }
+            }
+            for (int seq = oldBase; seq != end; seq = (seq + 1) % LimitSeqNo) {
+                if (window[seq] != null) {
+                    trace().log(T_ACK_REMOVE, ackNum, seq);
+                    remove(seq);
+                }
+            }
+            // Attempt to send more packets if window has moved
+            sendPackets();
+        }
+        if (min1>base && min1 != 100000000 && isInWindow(base) && window[base] != null){
+            Packet pkt = window[base];
+            congestionFastRetransmit(flight());
+            // Retransmit all packets in the window
+            toLayer3(A, pkt);
+            retransmissions++;
+            trace().log(T_SACK_RETX, pkt.getSeqnum(), base);
+            trace().log(T_RETX_COUNT, retransmissions);
+            isPacketRetransmiision[pkt.getSeqnum()] = false;
+            restartTimer(pkt.getSeqnum());
+        }
+    }
+
+    // Check if ACK number is within the current window
+    private boolean isInWindow(int ackNum) {
+        if (base <= ackNum && ackNum < base + WindowSize) {
+            return true;
+        } else if (base + WindowSize >= LimitSeqNo) { // Wrap-around
+            return ackNum < (base + WindowSize) % LimitSeqNo;
+        }
+        return false;
+    }
+
+    // Sender: Handle timer interrupt
+    protected void aTimerInterrupt() {
+        if (perPacketTimers) {
+            packetTimersInterrupt();
+            return;
+        }
+        trace().log(T_TIMEOUT);
+        Packet pkt = window[base];
+        if (pkt == null) {
+            // Nothing left at base to resend, as in checkDuplicate: keep
+            // timing the rest of the window, if any
+            if (flight() > 0) {
+                startTimer(A, rto());
+            }
+            return;
+        }
+        congestionTimeout(flight());
+        backOffTimeout();
+
+        // Retransmit all packets in the window
+        toLayer3(A, pkt);
+        retransmissions++;
+        trace().log(T_TIMEOUT_RETX, pkt.getSeqnum(), base);
+        isPacketRetransmiision[pkt.getSeqnum()] = false;
+        restartTimer(pkt.getSeqnum());
+    }
+
+    // Sender: Handle a tick of the timer wheel by resending every packet
+    // whose timer ran out, each backed off once more
+    private void packetTimersInterrupt() {
+        int n = timers.advance(getTime(), expired);
+        if (timers.isRunning()) {
+            startTimer(A, timers.tick());
+        }
+        if (n == 0) {
+            return;
+        }
+        trace().log(T_TIMERS_EXPIRED, n);
+        boolean oldest = false;
+        for (int i = 0; i < n; i++) {
+            oldest |= expired[i] == base;
+        }
+        if (oldest) {
+            congestionTimeout(flight());
+        } else {
+            congestionFastRetransmit(flight());
+        }
+        for (int i = 0; i < n; i++) {
+            int seq = expired[i];
+            toLayer3(A, window[seq]);
+            retransmissions++;
+            trace().log(T_TIMEOUT_RETX, seq, base);
+            isPacketRetransmiision[seq] = false;
+            if (backoffs[seq] < MAX_BACKOFF) {
+                backoffs[seq]++;
+            }
+            restartTimer(seq);
+        }
+    }
+
+    // Receiver: Handle incoming data packet
+    protected void bInput(Packet packet) {
+        if (trace().enabled(T_B_PAYLOAD)) {
+            trace().log(T_B_PAYLOAD, packet.getChecksum(), packet.getPayload());
+        }
+        if (isCorrupted(packet)) {
+            corruptedPacketsB++;
+            trace().log(T_B_CORRUPT);
+            return;
+        }
+
+        int seqNum = packet.getSeqnum();
+
+        trace().log(T_B_RECEIVED, seqNum);
+
+        if (seqNum == expectedSeqNum) {
+            // In-order packet
+            deliver(packet);
+            trace().log(T_B_SACK_ADD, seqNum);
+            trace().log(T_B_DELIVERED, seqNum);
+            expectedSeqNum = (expectedSeqNum + 1) % LimitSeqNo;
+            int move = 1;
+            // Check buffer for the next expected packets
+            while (bufferB.containsKey(expectedSeqNum)) {
+                Packet bufferedPkt = bufferB.remove(expectedSeqNum);
+                deliver(bufferedPkt);
+                move++;
+                expectedSeqNum = (expectedSeqNum + 1) % LimitSeqNo;
+            }
+            int seq = expectedSeqNum - 1;
+            if (seq<0){
+                seq+=LimitSeqNo;
+            }
+            Deque<Integer> temp =  new ArrayDeque<>();
+            for (Integer elementX : mostRecentAck) {
+                if (elementX <= seq) {
+                    continue;
+                } else {
+                    if (elementX - seq > LimitSeqNo / 2) {
+                        temp.addLast(elementX);
+                    }
+                }
+            }
+            mostRecentAck = temp;
+            sendACK(seq,currentSequenceNumber);
+            ackSent++;
+            currentSequenceNumber++;
+            currentSequenceNumber = currentSequenceNumber%LimitSeqNo;
+            trace().log(T_B_SHIFT, seqNum, move, expectedSeqNum);
+        } else if (withinWindow(expectedSeqNum, seqNum)) {
+            // Out-of-order packet, buffer it
+            if (!bufferB.containsKey(seqNum)) {
+                bufferB.put(seqNum, packet);
+                trace().log(T_B_BUFFERED, seqNum);
+            }
+            if (mostRecentAck.size()<SACK_LENGTH){
+                mostRecentAck.addLast(seqNum);
+            }else{
+                mostRecentAck.removeFirst();
+                mostRecentAck.addLast(seqNum);
+            }
+            trace().log(T_B_SACK_ADD, seqNum);
+            // Send ACK for the last in-order packet
+            sendACK((expectedSeqNum - 1 + LimitSeqNo) % LimitSeqNo,currentSequenceNumber);
+            ackSent++;
+        } else {
+            // Duplicate or outside window, resend ACK for the last in-order packet
+            sendACK((expectedSeqNum - 1 + LimitSeqNo) % LimitSeqNo,currentSequenceNumber);
+            ackSent++;
+
+            trace().log(T_B_DUPLICATE, seqNum);
+        }
+    }
+
+    // Receiver: Send ACK packet to sender
+    private void sendACK(int ackNum,int seqnumber) {
+        int checksum = calculateChecksum(seqnumber, ackNum, "");
+        Packet ackPkt = new Packet(seqnumber, ackNum, checksum, "",mostRecentAck);
+        toLayer3(B, ackPkt);
+        trace().log(T_B_ACK, ackNum, ackPkt.getMostRecentAck());
+    }
+
+    // Checkpoint support
+    @Override
+    protected void saveState(DataOutputStream cp) throws IOException {
+        cp.writeInt(currentSequenceNumber);
+
+        cp.writeInt(base);
+        cp.writeInt(nextSeqNum);
+        for (int seq = 0; seq < LimitSeqNo; seq++) {
+            cp.writeBoolean(window[seq] != null);
+            if (window[seq] != null) {
+                Checkpoint.writePacket(cp, window[seq]);
+                cp.writeDouble(packetSendTime[seq]);
+                cp.writeBoolean(isPacketRetransmiision[seq]);
+            }
+        }
+        cp.writeInt(bufferA.size());
+        for (Message m : bufferA) {
+            Checkpoint.writeMessage(cp, m);
+        }
+        cp.writeInt(lastAck);
+        Checkpoint.writeIntDeque(cp, mostRecentAck);
+        // Written as a deque would be
+        cp.writeInt(lastReceiveAckLength);
+        for (int i = 0; i < lastReceiveAckLength; i++) {
+            cp.writeInt(lastReceiveAck[i]);
+        }
+
+        cp.writeInt(expectedSeqNum);
+        writePacketMap(cp, bufferB);
+
+        cp.writeBoolean(timerRunning);
+        cp.writeInt(duplicateAckCount);
+        if (perPacketTimers) {
+            timers.save(cp);
+            for (int b : backoffs) {
+                cp.writeByte(b);
+            }
+        }
+    }
+
+    @Override
+    protected void restoreState(DataInputStream cp) throws IOException {
+        currentSequenceNumber = cp.readInt();
+
+        base = cp.readInt();
+        nextSeqNum = cp.readInt();
+        window = new Packet[LimitSeqNo];
+        packetSendTime = new double[LimitSeqNo];
+        isPacketRetransmiision = new boolean[LimitSeqNo];
+        for (int seq = 0; seq < LimitSeqNo; seq++) {
+            if (cp.readBoolean()) {
+                window[seq] = Checkpoint.readPacket(cp);
+                packetSendTime[seq] = cp.readDouble();
+                isPacketRetransmiision[seq] = cp.readBoolean();
+            }
+        }
+        bufferA = new LinkedList<>();
+        for (int i = cp.readInt(); i > 0; i--) {
+            bufferA.offer(Checkpoint.readMessage(cp));
+        }
+        lastAck = cp.readInt();
+        mostRecentAck = Checkpoint.readIntDeque(cp);
+        lastReceiveAckLength = cp.readInt();
+        lastReceiveAck = new int[Math.max(SACK_LENGTH, lastReceiveAckLength)];
+        for (int i = 0; i < lastReceiveAckLength; i++) {
+            lastReceiveAck[i] = cp.readInt();
+        }
+
+        expectedSeqNum = cp.readInt();
+        bufferB = readPacketMap(cp);
+
+        timerRunning = cp.readBoolean();
+        duplicateAckCount = cp.readInt();
+        if (perPacketTimers) {
+            timers = newTimers();
+            timers.restore(cp);
+            expired = new int[LimitSeqNo];
+            backoffs = new int[LimitSeqNo];
+            for (int i = 0; i < LimitSeqNo; i++) {
+                backoffs[i] = cp.readByte();
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * Selective Repeat.
+ *
+ * B buffers any packet within WindowSize of the next one it expects,
+ * delivers runs of them in order and ACKs every packet it accepts
+ * individually, including ones it already delivered whose ACK may have
+ * been lost.  A drops each packet from its window as its own ACK arrives
+ * and slides the window past the acknowledged packets at its front.
+ *
+ * Every unacknowledged packet has its own timer, so each lost packet is
+ * resent when its timer runs out, without waiting to reach the front of
+ * the window.  The timers are kept in a {@link TimerWheel} driven by the
+ * simulator's single timer for A, which ticks eight times per
+ * RxmtInterval while any are armed.  Each packet backs off on its own:
+ * its timer runs for {@link #rto()} doubled for every time it has run
+ * out, up to 2^MAX_BACKOFF times, until the packet is acknowledged.  An
+ * adaptive timeout is only fed RTT samples here and is not backed off
+ * as a whole.  Only the oldest packet's timer running out counts as a
+ * timeout for the congestion window, as the single timer did; any other
+ * means a loss behind packets that were acknowledged, and counts as a
+ * fast retransmit.
+ */
+public class SelectiveRepeatProtocol extends TransportProtocol {
+    private static final int TICKS_PER_TIMEOUT = 8;
+    private static final int WHEEL_SLOTS = 64;
+    private static final int MAX_BACKOFF = 3;
+
+    // Sender (A) state variables
+    private int base; // Sequence number of the oldest unacknowledged packet
+    private int nextSeqNum; // Next sequence number to use
+    private Map<Integer, Packet> window; // Unacknowledged packets by sequence number
+    private Queue<Message> bufferA; // Buffer for A_output
+    private Map<Integer, Double> packetSendTime;
+    private Map<Integer, Boolean> isPacketRetransmiision;
+    private TimerWheel timers; // One per unacknowledged packet
+    private int[] expired; // Timers that ran out in the current tick
+    private int[] backoffs; // Times each packet's timer has run out
+
+    // Receiver (B) state variables
+    private int expectedSeqNum; // Next expected sequence number
+    private Map<Integer, Packet> bufferB; // Buffer for out-of-order packets
+
+    // Trace statements
+    private static final int T_BUFFERED = Trace.define(2, Trace.SENDER,
+            "Adding message to buffer, current size:{0}");
+    private static final int T_SENT = Trace.define(2, Trace.SENDER,
+            "A_output: Sent packet {0} current base {1}");
+    private static final int T_CORRUPT_ACK = Trace.define(1, Trace.SENDER,
+            "A_input: Received corrupted ACK.");
+    private static final int T_ACK = Trace.define(2, Trace.SENDER,
+            "A_input: Received ACK {0}");
+    private static final int T_WINDOW_SHIFT = Trace.define(2, Trace.SENDER,
+            "A_input: Received ACK {0} make window shift {1} current base: {2}");
+    private static final int T_TIMEOUT = Trace.define(1, Trace.TIMER,
+            "A_timerInterrupt: {0} packet timers expired.");
+    private static final int T_TIMEOUT_RETX = Trace.define(2, Trace.TIMER,
+            "A_timerInterrupt: Retransmitted packet {0} current base: {1}");
+    private static final int T_B_CORRUPT = Trace.define(1, Trace.RECEIVER,
+            "B_input: Received corrupted packet.");
+    private static final int T_B_BUFFERED = Trace.define(2, Trace.RECEIVER,
+            "B_input: Buffered out-of-order packet {0}");
+    private static final int T_B_SHIFT = Trace.define(2, Trace.RECEIVER,
+            "B_input: Received Packet {0} make window shift {1} current base: {2}");
+    private static final int T_B_DUPLICATE = Trace.define(2, Trace.RECEIVER,
+            "B_input: Received duplicate packet {0}. Resent ACK.");
+    private static final int T_B_IGNORED = Trace.define(2, Trace.RECEIVER,
+            "B_input: Ignored out-of-window packet {0}");
+    private static final int T_B_ACK = Trace.define(2, Trace.RECEIVER,
+            "B_input: Sent ACK {0}");
+
+    @Override
+    public String getName() {
+        return "sr";
+    }
+
+    // Initialize sender (A)
+    protected void aInit() {
+        base = FirstSeqNo;
+        nextSeqNum = FirstSeqNo;
+        window = new HashMap<>();
+        bufferA = new ArrayDeque<>();
+        packetSendTime = new HashMap<>();
+        isPacketRetransmiision = new HashMap<>();
+        timers = newTimers();
+        expired = new int[LimitSeqNo];
+        backoffs = new int[LimitSeqNo];
+    }
+
+    private TimerWheel newTimers() {
+        return new TimerWheel(LimitSeqNo, WHEEL_SLOTS, RxmtInterval / TICKS_PER_TIMEOUT);
+    }
+
+    // Initialize receiver (B)
+    protected void bInit() {
+        expectedSeqNum = FirstSeqNo;
+        bufferB = new HashMap<>();
+    }
+
+    // Sender: Handle new message from layer5
+    protected void aOutput(Message message) {
+        bufferA.offer(message);
+        trace().log(T_BUFFERED, bufferA.size());
+        sendPackets();
+    }
+
+    // Number of packets from base up to the next to be sent, acknowledged
+    // or not
+    private int outstanding() {
+        return (nextSeqNum - base + LimitSeqNo) % LimitSeqNo;
+    }
+
+    // Sender: Send buffered messages while the window has room
+    private void sendPackets() {
+        while (outstanding() < sendWindow() && !bufferA.isEmpty()) {
+            Packet pkt = makePacket(nextSeqNum, bufferA.poll());
+            window.put(nextSeqNum, pkt);
+            packetSendTime.put(nextSeqNum, getTime());
+            isPacketRetransmiision.put(nextSeqNum, true);
+            toLayer3(A, pkt);
+            originalPackets++;
+            trace().log(T_SENT, pkt.getSeqnum(), base);
+            backoffs[nextSeqNum] = 0;
+            armTimer(nextSeqNum);
+            nextSeqNum = (nextSeqNum + 1) % LimitSeqNo;
+        }
+    }
+
+    // Sender: Handle incoming ACK packet
+    protected void aInput(Packet packet) {
+        if (isCorrupted(packet)) {
+            corruptedPackets++;
+            trace().log(T_CORRUPT_ACK);
+            return;
+        }
+
+        int ackNum = packet.getAcknum();
+        trace().log(T_ACK, ackNum);
+        if (!window.containsKey(ackNum)) {
+            // Already acknowledged
+            congestionDuplicateAck(outstanding());
+            return;
+        }
+        window.remove(ackNum);
+        timers.cancel(ackNum);
+        backoffs[ackNum] = 0;
+        double sent = packetSendTime.remove(ackNum);
+        boolean original = isPacketRetransmiision.remove(ackNum);
+        sampleRoundTrip(sent, original);
+        if (original) {
+            sampleTimeout(sent);
+        }
+        congestionAck(1, outstanding());
+
+        if (ackNum == base) {
+            // Slide past every acknowledged packet at the front
+            int move = 0;
+            while (base != nextSeqNum && !window.containsKey(base)) {
+                base = (base + 1) % LimitSeqNo;
+                move++;
+            }
+            trace().log(T_WINDOW_SHIFT, ackNum, move, base);
+            sendPackets();
+        }
+    }
+
+    // Start (or restart) seq's timer, backed off, and the wheel if it
+    // was stopped
+    private void armTimer(int seq) {
+        if (timers.schedule(seq, getTime(), rto() * (1 << backoffs[seq]))) {
+            startTimer(A, timers.tick());
+        }
+    }
+
+    // Sender: Handle a tick of the timer wheel by resending every packet
+    // whose timer ran out
+    protected void aTimerInterrupt() {
+        int n = timers.advance(getTime(), expired);
+        if (timers.isRunning()) {
+            startTimer(A, timers.tick());
+        }
+        if (n == 0) {
+            return;
+        }
+        trace().log(T_TIMEOUT, n);
+        boolean oldest = false;
+        for (int i = 0; i < n; i++) {
+            oldest |= expired[i] == base;
+        }
+        if (oldest) {
+            congestionTimeout(outstanding());
+        } else {
+            congestionFastRetransmit(outstanding());
+        }
+        for (int i = 0; i < n; i++) {
+            int seq = expired[i];
+            toLayer3(A, window.get(seq));
+            retransmissions++;
+            isPacketRetransmiision.put(seq, false);
+            trace().log(T_TIMEOUT_RETX, seq, base);
+            if (backoffs[seq] < MAX_BACKOFF) {
+                backoffs[seq]++;
+            }
+            armTimer(seq);
+        }
+    }
+
+    // Receiver: Handle incoming data packet
+    protected void bInput(Packet packet) {
+        if (isCorrupted(packet)) {
+            corruptedPacketsB++;
+            trace().log(T_B_CORRUPT);
+            return;
+        }
+
+        int seqNum = packet.getSeqnum();
+        if (withinWindow(expectedSeqNum, seqNum)) {
+            if (!bufferB.containsKey(seqNum)) {
+                bufferB.put(seqNum, packet);
+                trace().log(T_B_BUFFERED, seqNum);
+            }
+            sendACK(seqNum);
+            ackSent++;
+            // Deliver the run now in order, if any
+            int move = 0;
+            while (bufferB.containsKey(expectedSeqNum)) {
+                deliver(bufferB.remove(expectedSeqNum));
+                expectedSeqNum = (expectedSeqNum + 1) % LimitSeqNo;
+                move++;
+            }
+            if (move > 0) {
+                trace().log(T_B_SHIFT, seqNum, move, expectedSeqNum);
+            }
+        } else if (withinWindow((expectedSeqNum - WindowSize + LimitSeqNo) % LimitSeqNo, seqNum)) {
+            // Delivered already; its ACK was lost or is late
+            sendACK(seqNum);
+            ackSent++;
+            trace().log(T_B_DUPLICATE, seqNum);
+        } else {
+            trace().log(T_B_IGNORED, seqNum);
+        }
+    }
+
+    // Receiver: Send ACK packet to sender
+    private void sendACK(int ackNum) {
+        int checksum = calculateChecksum(0, ackNum, "");
+        toLayer3(B, new Packet(0, ackNum, checksum, ""));
+        trace().log(T_B_ACK, ackNum);
+    }
+
+    @Override
+    protected void saveState(DataOutputStream cp) throws IOException {
+        cp.writeInt(base);
+        cp.writeInt(nextSeqNum);
+        cp.writeInt(window.size());
+        for (Map.Entry<Integer, Packet> entry : window.entrySet()) {
+            int seq = entry.getKey();
+            cp.writeInt(seq);
+            Checkpoint.writePacket(cp, entry.getValue());
+            cp.writeDouble(packetSendTime.get(seq));
+            cp.writeBoolean(isPacketRetransmiision.get(seq));
+        }
+        timers.save(cp);
+        for (int b : backoffs) {
+            cp.writeByte(b);
+        }
+        cp.writeInt(bufferA.size());
+        for (Message m : bufferA) {
+            Checkpoint.writeMessage(cp, m);
+        }
+        cp.writeInt(expectedSeqNum);
+        writePacketMap(cp, bufferB);
+    }
+
+    @Override
+    protected void restoreState(DataInputStream cp) throws IOException {
+        base = cp.readInt();
+        nextSeqNum = cp.readInt();
+        window = new HashMap<>();
+        packetSendTime = new HashMap<>();
+        isPacketRetransmiision = new HashMap<>();
+        for (int i = cp.readInt(); i > 0; i--) {
+            int seq = cp.readInt();
+            window.put(seq, Checkpoint.readPacket(cp));
+            packetSendTime.put(seq, cp.readDouble());
+            isPacketRetransmiision.put(seq, cp.readBoolean());
+        }
+        timers = newTimers();
+        timers.restore(cp);
+        expired = new int[LimitSeqNo];
+        backoffs = new int[LimitSeqNo];
+        for (int i = 0; i < LimitSeqNo; i++) {
+            backoffs[i] = cp.readByte();
+        }
+        bufferA = new ArrayDeque<>();
+        for (int i = cp.readInt(); i > 0; i--) {
+            bufferA.offer(Checkpoint.readMessage(cp));
+        }
+        expectedSeqNum = cp.readInt();
+        bufferB = readPacketMap(cp);
+    }
+}
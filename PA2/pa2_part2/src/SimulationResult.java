@@ -0,0 +1,100 @@
+/**
+ * The statistics StudentNetworkSimulator reports at the end of a run,
+ * kept as values so that drivers running many simulations can tabulate
+ * them.
+ */
+public class SimulationResult {
+    private final double endTime;
+    private final int originalPackets;
+    private final int retransmissions;
+    private final int delivered;
+    private final int ackSent;
+    private final int corruptedPackets;
+    private final double lostRatio;
+    private final double corruptedRatio;
+    private final double averageRTT;
+    private final double averageCommunicationTime;
+
+    public SimulationResult(double endTime, int originalPackets, int retransmissions,
+                            int delivered, int ackSent, int corruptedPackets,
+                            double lostRatio, double corruptedRatio,
+                            double averageRTT, double averageCommunicationTime) {
+        this.endTime = endTime;
+        this.originalPackets = originalPackets;
+        this.retransmissions = retransmissions;
+        this.delivered = delivered;
+        this.ackSent = ackSent;
+        this.corruptedPackets = corruptedPackets;
+        this.lostRatio = lostRatio;
+        this.corruptedRatio = corruptedRatio;
+        this.averageRTT = averageRTT;
+        this.averageCommunicationTime = averageCommunicationTime;
+    }
+
+    public double getEndTime() {
+        return endTime;
+    }
+
+    public int getOriginalPackets() {
+        return originalPackets;
+    }
+
+    public int getRetransmissions() {
+        return retransmissions;
+    }
+
+    public int getDelivered() {
+        return delivered;
+    }
+
+    public int getAckSent() {
+        return ackSent;
+    }
+
+    public int getCorruptedPackets() {
+        return corruptedPackets;
+    }
+
+    public double getLostRatio() {
+        return lostRatio;
+    }
+
+    public double getCorruptedRatio() {
+        return corruptedRatio;
+    }
+
+    public double getAverageRTT() {
+        return averageRTT;
+    }
+
+    public double getAverageCommunicationTime() {
+        return averageCommunicationTime;
+    }
+
+    /**
+     * Column names matching {@link #toRow()}, tab separated.
+     */
+    public static String header() {
+        return "end_time\toriginal\tretransmissions\tdelivered\tacks\tcorrupted"
+                + "\tlost_ratio\tcorrupted_ratio\tavg_rtt\tavg_comm_time";
+    }
+
+    /**
+     * The columns of {@link #toRow()} as numbers.
+     */
+    public double[] toArray() {
+        return new double[] {endTime, originalPackets, retransmissions, delivered,
+                ackSent, corruptedPackets, lostRatio, corruptedRatio, averageRTT,
+                averageCommunicationTime};
+    }
+
+    /**
+     * This result as one tab-separated line.
+     */
+    public String toRow() {
+        return endTime + "\t" + originalPackets + "\t" + retransmissions + "\t"
+                + delivered + "\t" + ackSent + "\t" + corruptedPackets + "\t"
+                + lostRatio + "\t" + corruptedRatio + "\t" + averageRTT + "\t"
+                + averageCommunicationTime;
+    }
+}
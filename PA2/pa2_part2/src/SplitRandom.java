@@ -0,0 +1,124 @@
+// 64-bit random streams from xoshiro256** (Blackman and Vigna), one
+// generator per stream, seeded from a single seed through SplitMix64.
+//
+// Every number has 53 bits, so small loss and corruption probabilities
+// are resolved properly.  split() hands out the current block of 2^192
+// numbers of each stream and moves this source on to the next block, so
+// the sources from repeated splits never overlap and can drive parallel
+// replications.
+public class SplitRandom implements RandomSource
+{
+    private static final int WORDS = 4;
+
+    private static final long[] LONG_JUMP = {
+        0x76e15d3efefdcbbfL, 0xc5004e441c522fb3L,
+        0x77710069854ee241L, 0x39109bb02acbe635L
+    };
+
+    // Four words of state per stream
+    private final long[] s = new long[STREAMS * WORDS];
+
+    public SplitRandom(long seed)
+    {
+        long x = seed;
+        for (int i = 0; i < s.length; i++)
+        {
+            x += 0x9e3779b97f4a7c15L;
+            s[i] = mix(x);
+        }
+    }
+
+    private SplitRandom(long[] state)
+    {
+        System.arraycopy(state, 0, s, 0, s.length);
+    }
+
+    // SplitMix64's output function
+    private static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    public long nextLong(int stream)
+    {
+        int b = stream * WORDS;
+        long s0 = s[b];
+        long s1 = s[b + 1];
+        long s2 = s[b + 2];
+        long s3 = s[b + 3];
+        long result = Long.rotateLeft(s1 * 5, 7) * 9;
+        long t = s1 << 17;
+        s2 ^= s0;
+        s3 ^= s1;
+        s1 ^= s2;
+        s0 ^= s3;
+        s2 ^= t;
+        s3 = Long.rotateLeft(s3, 45);
+        s[b] = s0;
+        s[b + 1] = s1;
+        s[b + 2] = s2;
+        s[b + 3] = s3;
+        return result;
+    }
+
+    // Uniform on [0, 1), in steps of 2^-53
+    public double nextDouble(int stream)
+    {
+        return (nextLong(stream) >>> 11) * 0x1.0p-53;
+    }
+
+    public long[] getState()
+    {
+        return s.clone();
+    }
+
+    public void setState(long[] state)
+    {
+        System.arraycopy(state, 0, s, 0, s.length);
+    }
+
+    public RandomSource copy()
+    {
+        return new SplitRandom(s);
+    }
+
+    public RandomSource split()
+    {
+        SplitRandom block = new SplitRandom(s);
+        for (int stream = 0; stream < STREAMS; stream++)
+        {
+            longJump(stream);
+        }
+        return block;
+    }
+
+    // Advance a stream by 2^192 numbers
+    private void longJump(int stream)
+    {
+        int b = stream * WORDS;
+        long s0 = 0;
+        long s1 = 0;
+        long s2 = 0;
+        long s3 = 0;
+        for (long jump : LONG_JUMP)
+        {
+            for (int bit = 0; bit < 64; bit++)
+            {
+                if ((jump & (1L << bit)) != 0)
+                {
+                    s0 ^= s[b];
+                    s1 ^= s[b + 1];
+                    s2 ^= s[b + 2];
+                    s3 ^= s[b + 3];
+                }
+                nextLong(stream);
+            }
+        }
+        s[b] = s0;
+        s[b + 1] = s1;
+        s[b + 2] = s2;
+        s[b + 3] = s3;
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Quantiles of Student's t distribution, for confidence intervals.
+ */
+public class StudentT {
+    private StudentT() {
+    }
+
+    /**
+     * The value t with P(T <= t) = p for T with df degrees of freedom.
+     */
+    public static double quantile(double p, double df) {
+        if (!(p > 0 && p < 1) || !(df > 0)) {
+            throw new IllegalArgumentException("Need 0 < p < 1 and df > 0");
+        }
+        if (p < 0.5) {
+            return -quantile(1 - p, df);
+        }
+        // The cdf is increasing: widen the bracket, then bisect
+        double lo = 0;
+        double hi = 1;
+        while (cdf(hi, df) < p) {
+            lo = hi;
+            hi *= 2;
+        }
+        for (int i = 0; i < 200 && hi - lo > 1e-12 * hi; i++) {
+            double mid = (lo + hi) / 2;
+            if (cdf(mid, df) < p) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return (lo + hi) / 2;
+    }
+
+    /**
+     * P(T <= t) for T with df degrees of freedom.
+     */
+    public static double cdf(double t, double df) {
+        double tail = 0.5 * incompleteBeta(df / 2, 0.5, df / (df + t * t));
+        return t >= 0 ? 1 - tail : tail;
+    }
+
+    /**
+     * The regularized incomplete beta function I_x(a, b), by its
+     * continued fraction (Numerical Recipes, 6.4).
+     */
+    static double incompleteBeta(double a, double b, double x) {
+        if (x <= 0) {
+            return 0;
+        }
+        if (x >= 1) {
+            return 1;
+        }
+        double front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b)
+                + a * Math.log(x) + b * Math.log(1 - x));
+        if (x < (a + 1) / (a + b + 2)) {
+            return front * betaFraction(a, b, x) / a;
+        }
+        return 1 - front * betaFraction(b, a, 1 - x) / b;
+    }
+
+    private static double betaFraction(double a, double b, double x) {
+        final double tiny = 1e-300;
+        double c = 1;
+        double d = 1 - (a + b) * x / (a + 1);
+        if (Math.abs(d) < tiny) {
+            d = tiny;
+        }
+        d = 1 / d;
+        double h = d;
+        for (int m = 1; m <= 300; m++) {
+            int m2 = 2 * m;
+            double aa = m * (b - m) * x / ((a + m2 - 1) * (a + m2));
+            d = 1 + aa * d;
+            d = Math.abs(d) < tiny ? 1 / tiny : 1 / d;
+            c = 1 + aa / c;
+            if (Math.abs(c) < tiny) {
+                c = tiny;
+            }
+            h *= d * c;
+            aa = -(a + m) * (a + b + m) * x / ((a + m2) * (a + m2 + 1));
+            d = 1 + aa * d;
+            d = Math.abs(d) < tiny ? 1 / tiny : 1 / d;
+            c = 1 + aa / c;
+            if (Math.abs(c) < tiny) {
+                c = tiny;
+            }
+            double delta = d * c;
+            h *= delta;
+            if (Math.abs(delta - 1) < 1e-15) {
+                break;
+            }
+        }
+        return h;
+    }
+
+    /**
+     * log Gamma(x) for x > 0 (Lanczos approximation, g = 7).
+     */
+    static double logGamma(double x) {
+        final double[] c = {0.99999999999980993, 676.5203681218851, -1259.1392167224028,
+                771.32342877765313, -176.61502916214059, 12.507343278686905,
+                -0.13857109526572012, 9.9843695780195716e-6, 1.5056327351493116e-7};
+        if (x < 0.5) {
+            return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * x))) - logGamma(1 - x);
+        }
+        x -= 1;
+        double sum = c[0];
+        for (int i = 1; i < c.length; i++) {
+            sum += c[i] / (x + i);
+        }
+        double t = x + 7.5;
+        return 0.5 * Math.log(2 * Math.PI) + (x + 0.5) * Math.log(t) - t + Math.log(sum);
+    }
+}
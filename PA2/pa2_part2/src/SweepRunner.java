@@ -0,0 +1,225 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs StudentNetworkSimulator over a grid of parameters in parallel and
+ * writes one tab-separated results table.
+ *
+ * Each argument is either a grid axis, {@code key=v1,v2,...}, with key one
+ * of nsim, loss, corrupt, delay, window, timeout, seed, protocol (one of
+ * {@link TransportProtocols#NAMES}), congestion (one of
+ * {@link CongestionControls#NAMES}) or rto (one of
+ * {@link TransportProtocol#TIMEOUTS}), or an option:
+ * {@code threads=N} (default: all cores), {@code out=FILE} (default
+ * sweep_results.tsv) and {@code logs=DIR} to keep each run's trace and
+ * layer 5 deliveries.  Axes that are not given take Project's defaults.
+ *
+ * Every run has its own output stream and delivery file, so nothing is
+ * shared between simulations and System.out is left alone.
+ */
+public class SweepRunner {
+    private static final String[] AXES = {
+            "nsim", "loss", "corrupt", "delay", "window", "timeout", "seed", "protocol", "congestion",
+            "rto"};
+    private static final String[] DEFAULTS = {
+            "10", "0.0", "0.0", "1000", "8", "15.0", "1", "sack", "none", "fixed"};
+
+    /**
+     * One point of the grid.
+     */
+    public static class Point {
+        final int nsim;
+        final double loss;
+        final double corrupt;
+        final double delay;
+        final int window;
+        final double timeout;
+        final int seed;
+        final String protocol;
+        final String congestion;
+        final String rto;
+
+        Point(String[] values) {
+            nsim = Integer.parseInt(values[0]);
+            loss = Double.parseDouble(values[1]);
+            corrupt = Double.parseDouble(values[2]);
+            delay = Double.parseDouble(values[3]);
+            window = Integer.parseInt(values[4]);
+            timeout = Double.parseDouble(values[5]);
+            seed = Integer.parseInt(values[6]);
+            protocol = values[7];
+            congestion = values[8];
+            rto = values[9];
+            // Reject unknown names here rather than in a worker
+            TransportProtocols.create(protocol).setRetransmissionTimeout(rto);
+            CongestionControls.create(congestion, window);
+        }
+
+        StudentNetworkSimulator simulator(EventList events) {
+            StudentNetworkSimulator simulator = new StudentNetworkSimulator(nsim,
+                    loss, corrupt, delay, 0, seed, window, timeout, events,
+                    TransportProtocols.create(protocol));
+            simulator.setCongestionControl(congestion);
+            simulator.setRetransmissionTimeout(rto);
+            return simulator;
+        }
+
+        String name() {
+            return "n" + nsim + "_l" + loss + "_c" + corrupt + "_d" + delay
+                    + "_w" + window + "_t" + timeout + "_s" + seed + "_" + protocol + "_" + congestion
+                    + "_" + rto;
+        }
+
+        String toRow() {
+            return nsim + "\t" + loss + "\t" + corrupt + "\t" + delay + "\t"
+                    + window + "\t" + timeout + "\t" + seed + "\t" + protocol + "\t" + congestion
+                    + "\t" + rto;
+        }
+    }
+
+    private final List<Point> points;
+    private final File logDir;
+
+    public SweepRunner(List<Point> points, File logDir) {
+        this.points = points;
+        this.logDir = logDir;
+    }
+
+    /**
+     * Expand the axes into every combination of their values, the last
+     * axis varying fastest.
+     */
+    public static List<Point> grid(Map<String, List<String>> axes) {
+        List<Point> points = new ArrayList<>();
+        String[] values = new String[AXES.length];
+        expand(axes, 0, values, points);
+        return points;
+    }
+
+    private static void expand(Map<String, List<String>> axes, int axis,
+                               String[] values, List<Point> points) {
+        if (axis == AXES.length) {
+            points.add(new Point(values));
+            return;
+        }
+        List<String> choices = axes.get(AXES[axis]);
+        if (choices == null) {
+            choices = Collections.singletonList(DEFAULTS[axis]);
+        }
+        for (String choice : choices) {
+            values[axis] = choice;
+            expand(axes, axis + 1, values, points);
+        }
+    }
+
+    /**
+     * Run every point on the given pool; results come back in grid order.
+     */
+    public List<SimulationResult> run(ForkJoinPool pool)
+            throws InterruptedException, ExecutionException {
+        List<Callable<SimulationResult>> tasks = new ArrayList<>();
+        for (Point p : points) {
+            tasks.add(() -> runOne(p));
+        }
+
+        List<SimulationResult> results = new ArrayList<>();
+        for (Future<SimulationResult> f : pool.invokeAll(tasks)) {
+            results.add(f.get());
+        }
+        return results;
+    }
+
+    private SimulationResult runOne(Point p) throws IOException {
+        StudentNetworkSimulator simulator = p.simulator(new EventStore());
+
+        OutputStream log;
+        if (logDir != null) {
+            log = new BufferedOutputStream(new FileOutputStream(
+                    new File(logDir, p.name() + ".log")));
+            simulator.setDeliveryFile(
+                    new File(logDir, p.name() + ".out").getPath());
+        } else {
+            log = OutputStream.nullOutputStream();
+            simulator.setDeliveryFile(null);
+        }
+
+        try (PrintStream ps = new PrintStream(log)) {
+            simulator.setOutput(ps);
+            simulator.runSimulator();
+        }
+        return simulator.getResult();
+    }
+
+    public void write(List<SimulationResult> results, PrintStream table) {
+        table.println("nsim\tloss\tcorrupt\tdelay\twindow\ttimeout\tseed\tprotocol\tcongestion\trto\t"
+                + SimulationResult.header());
+        for (int i = 0; i < points.size(); i++) {
+            table.println(points.get(i).toRow() + "\t" + results.get(i).toRow());
+        }
+    }
+
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("usage: java SweepRunner [key=v1,v2,...]... "
+                + "[threads=N] [out=FILE] [logs=DIR]");
+        System.err.println("keys: " + String.join(", ", AXES));
+        System.exit(1);
+    }
+
+    public static void main(String[] argv) {
+        Map<String, List<String>> axes = new HashMap<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        String outName = "sweep_results.tsv";
+        File logDir = null;
+
+        for (String arg : argv) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                usage("Bad argument: " + arg);
+            }
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+
+            if (key.equals("threads")) {
+                threads = Integer.parseInt(value);
+            } else if (key.equals("out")) {
+                outName = value;
+            } else if (key.equals("logs")) {
+                logDir = new File(value);
+                logDir.mkdirs();
+            } else if (Arrays.asList(AXES).contains(key)) {
+                axes.put(key, Arrays.asList(value.split(",")));
+            } else {
+                usage("Unknown key: " + key);
+            }
+        }
+
+        List<Point> points = null;
+        try {
+            points = grid(axes);
+        } catch (NumberFormatException nfe) {
+            usage("Bad number: " + nfe.getMessage());
+        } catch (IllegalArgumentException iae) {
+            usage(iae.getMessage());
+        }
+
+        SweepRunner runner = new SweepRunner(points, logDir);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (PrintStream table = new PrintStream(
+                new BufferedOutputStream(new FileOutputStream(outName)))) {
+            long start = System.nanoTime();
+            runner.write(runner.run(pool), table);
+            System.out.println("Ran " + points.size() + " simulations on "
+                    + threads + " threads in "
+                    + (System.nanoTime() - start) / 1000000 + " ms; results in "
+                    + outName);
+        } catch (IOException | InterruptedException | ExecutionException e) {
+            System.err.println("Sweep failed: " + e);
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Logical timers named by small integer keys (sequence numbers), kept in
+// a hashed timing wheel (Varghese and Lauck's scheme 6) so that a sender
+// can run one timer per packet on the simulator's single entity timer.
+//
+// Time is cut into ticks of a fixed length.  A timer due in tick d sits
+// in slot d mod slots, on a circular doubly linked list threaded through
+// int arrays, so arming and cancelling are O(1) and allocate nothing.
+// Timers due a whole revolution or more ahead share the slot with nearer
+// ones and are skipped until their tick comes round.
+//
+// The wheel only ticks while it is running: the owner starts its entity
+// timer for tick() when schedule() says the wheel has just started, and
+// calls advance() each time that timer runs out, restarting it for
+// another tick while isRunning().  A wheel that empties stops at its next
+// tick, so cancelling never needs to stop the entity timer.  Timers fire
+// at their tick, which is never early and at most one tick late.
+class TimerWheel
+{
+    private static final long IDLE = -1;
+
+    private final double tick;
+    private final int keys;
+    private final int mask;
+    // Nodes 0 .. keys - 1 are the timers; node keys + s heads slot s
+    private final int[] next;
+    private final int[] prev;
+    private final long[] due; // Tick each timer runs out in, or IDLE
+    private long now; // Ticks since the wheel started
+    private double lastTick; // Simulated time of tick now
+    private int armed;
+    private boolean running;
+
+    // A wheel for keys 0 .. keys - 1 with the given number of slots (a
+    // power of two) of tick time units each
+    TimerWheel(int keys, int slots, double tick)
+    {
+        if ((slots <= 0) || ((slots & (slots - 1)) != 0) || !(tick > 0))
+        {
+            throw new IllegalArgumentException("Need a power of two slots and tick > 0");
+        }
+        this.tick = tick;
+        this.keys = keys;
+        mask = slots - 1;
+        next = new int[keys + slots];
+        prev = new int[keys + slots];
+        due = new long[keys];
+        clear();
+    }
+
+    void clear()
+    {
+        for (int i = 0; i < next.length; i++)
+        {
+            next[i] = i;
+            prev[i] = i;
+        }
+        Arrays.fill(due, IDLE);
+        now = 0;
+        lastTick = 0;
+        armed = 0;
+        running = false;
+    }
+
+    double tick()
+    {
+        return tick;
+    }
+
+    boolean isRunning()
+    {
+        return running;
+    }
+
+    boolean isScheduled(int key)
+    {
+        return due[key] != IDLE;
+    }
+
+    int size()
+    {
+        return armed;
+    }
+
+    // Arm (or re-arm) key's timer to run out delay after time; true if the
+    // wheel was stopped and has started, so the entity timer must be
+    // started for tick()
+    boolean schedule(int key, double time, double delay)
+    {
+        boolean started = false;
+        if (!running)
+        {
+            running = true;
+            now = 0;
+            lastTick = time;
+            started = true;
+        }
+        cancel(key);
+        // Small tolerance so that a delay of exactly n ticks takes n
+        long ticks = (long) Math.ceil((time - lastTick + delay) / tick - 1e-9);
+        long d = now + Math.max(1, ticks);
+        due[key] = d;
+        link(key, keys + (int) (d & mask));
+        armed++;
+        return started;
+    }
+
+    void cancel(int key)
+    {
+        if (due[key] != IDLE)
+        {
+            unlink(key);
+            due[key] = IDLE;
+            armed--;
+        }
+    }
+
+    // Move on one tick, at the given time, and put the keys whose timers
+    // ran out in expired, in the order they were armed; returns how many.
+    // The wheel stops if no timers are left.
+    int advance(double time, int[] expired)
+    {
+        now++;
+        lastTick = time;
+        int head = keys + (int) (now & mask);
+        int n = 0;
+        int node = next[head];
+        while (node != head)
+        {
+            int following = next[node];
+            if (due[node] == now)
+            {
+                unlink(node);
+                due[node] = IDLE;
+                armed--;
+                expired[n++] = node;
+            }
+            node = following;
+        }
+        if (armed == 0)
+        {
+            running = false;
+        }
+        return n;
+    }
+
+    // Insert node at the tail of the list headed by head
+    private void link(int node, int head)
+    {
+        int tail = prev[head];
+        next[tail] = node;
+        prev[node] = tail;
+        next[node] = head;
+        prev[head] = node;
+    }
+
+    private void unlink(int node)
+    {
+        next[prev[node]] = next[node];
+        prev[next[node]] = prev[node];
+        next[node] = node;
+        prev[node] = node;
+    }
+
+    // Checkpoint support: each slot's timers in list order, so that they
+    // run out in the same order after a restore
+    void save(DataOutputStream cp) throws IOException
+    {
+        cp.writeLong(now);
+        cp.writeDouble(lastTick);
+        cp.writeBoolean(running);
+        cp.writeInt(armed);
+        for (int head = keys; head < next.length; head++)
+        {
+            for (int node = next[head]; node != head; node = next[node])
+            {
+                cp.writeInt(node);
+                cp.writeLong(due[node]);
+            }
+        }
+    }
+
+    void restore(DataInputStream cp) throws IOException
+    {
+        clear();
+        now = cp.readLong();
+        lastTick = cp.readDouble();
+        running = cp.readBoolean();
+        int n = cp.readInt();
+        for (int i = 0; i < n; i++)
+        {
+            int key = cp.readInt();
+            long d = cp.readLong();
+            due[key] = d;
+            link(key, keys + (int) (d & mask));
+        }
+        armed = n;
+    }
+}
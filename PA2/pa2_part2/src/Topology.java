@@ -0,0 +1,541 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.DoubleSupplier;
+
+// Hosts joined by one-way point-to-point links, with static routing.
+//
+// Hosts are numbered from 0; NetworkSimulator.A and B are hosts 0 and 1.
+// Each link has its own loss and corruption probabilities and delivers
+// a packet delay + jitter time units after the later of the send time
+// and the previous arrival on the link, so a link never reorders.  The
+// jitter is U(0, jitter) unless another distribution is chosen.
+// Packets follow the path with the least mean delay, fewest hops on
+// ties; the routes towards a destination are worked out the first time
+// a packet is sent to it.
+//
+// A link given a rate with setRate() also takes size / rate to send each
+// packet, one at a time, and packets wait their turn in an unbounded
+// queue; setQueue() bounds it with a QueueDiscipline that decides what
+// to drop.  The delay is then the propagation delay, counted from the
+// end of the transmission, and packets propagate side by side: a packet
+// only waits for the previous arrival if it would otherwise overtake it.
+//
+// Layer 5 messages arrive at the traffic sources in turn, host A only
+// unless addSource() is used.
+//
+// The links remember the packets in flight on them, so a topology
+// belongs to one simulator.
+public class Topology
+{
+    // How the jitter added to a link's delay is distributed: uniform on
+    // [0, jitter], or exponential with mean jitter
+    public enum Jitter
+    {
+        UNIFORM, EXPONENTIAL
+    }
+
+    public static class Link
+    {
+        private final int from;
+        private final int to;
+        private final double loss;
+        private final double corrupt;
+        private final double delay;
+        private final double jitter;
+        private Jitter jitterDistribution = Jitter.UNIFORM;
+
+        // Arrival time of the last packet sent over the link
+        double lastArrival;
+
+        // Queueing, for links with a rate: the link is busy sending until
+        // busyUntil, and with a discipline departures holds the times at
+        // which the packets still queued (including the one being sent)
+        // leave, oldest first
+        private double rate;
+        private QueueDiscipline discipline;
+        double busyUntil;
+        private double[] departures;
+        private int head;
+        private int queued;
+
+        Link(int from, int to, double loss, double corrupt, double delay,
+             double jitter)
+        {
+            this.from = from;
+            this.to = to;
+            this.loss = loss;
+            this.corrupt = corrupt;
+            this.delay = delay;
+            this.jitter = jitter;
+        }
+
+        public int getFrom()
+        {
+            return from;
+        }
+
+        public int getTo()
+        {
+            return to;
+        }
+
+        public double getLoss()
+        {
+            return loss;
+        }
+
+        public double getCorrupt()
+        {
+            return corrupt;
+        }
+
+        public double getDelay()
+        {
+            return delay;
+        }
+
+        public double getJitter()
+        {
+            return jitter;
+        }
+
+        public Jitter getJitterDistribution()
+        {
+            return jitterDistribution;
+        }
+
+        public void setJitterDistribution(Jitter d)
+        {
+            jitterDistribution = d;
+        }
+
+        // The jitter for a U(0, 1) draw u
+        double jitter(double u)
+        {
+            switch (jitterDistribution)
+            {
+                case EXPONENTIAL:
+                    // OSIRandom can draw exactly 1
+                    return -jitter * Math.log(Math.max(1 - u, 0x1.0p-53));
+                default:
+                    return u * jitter;
+            }
+        }
+
+        double meanDelay()
+        {
+            switch (jitterDistribution)
+            {
+                case EXPONENTIAL:
+                    return delay + jitter;
+                default:
+                    return delay + jitter / 2;
+            }
+        }
+
+        // Send at rate bytes per time unit, queueing without limit
+        public void setRate(double rate)
+        {
+            if (!(rate > 0))
+            {
+                throw new IllegalArgumentException("Link rate must be positive");
+            }
+            this.rate = rate;
+        }
+
+        // As above, queueing as the discipline allows
+        public void setQueue(double rate, QueueDiscipline discipline)
+        {
+            setRate(rate);
+            this.discipline = discipline;
+            departures = new double[16];
+        }
+
+        // Whether packets take time to send
+        public boolean hasRate()
+        {
+            return rate > 0;
+        }
+
+        // Whether a discipline may drop packets
+        public boolean isQueued()
+        {
+            return discipline != null;
+        }
+
+        public double getRate()
+        {
+            return rate;
+        }
+
+        // Queue a packet of size bytes arriving at time now.  Returns the
+        // time its transmission starts, after which busyUntil is when it
+        // ends, or -1 if the discipline drops it.
+        double enqueue(double now, int size, DoubleSupplier random)
+        {
+            if (discipline == null)
+            {
+                double start = Math.max(now, busyUntil);
+                busyUntil = start + size / rate;
+                return start;
+            }
+
+            while ((queued > 0) && (departures[head] <= now))
+            {
+                head = (head + 1) & (departures.length - 1);
+                queued--;
+            }
+
+            if (!discipline.enqueue(now, queued, busyUntil, random))
+            {
+                return -1;
+            }
+            double start = Math.max(now, busyUntil);
+            if (!discipline.dequeue(start, start - now))
+            {
+                // Dropped at the head: it held its place until then but
+                // never uses the link
+                push(start);
+                return -1;
+            }
+            busyUntil = start + size / rate;
+            push(busyUntil);
+            return start;
+        }
+
+        private void push(double departure)
+        {
+            if (queued == departures.length)
+            {
+                double[] grown = new double[queued * 2];
+                for (int i = 0; i < queued; i++)
+                {
+                    grown[i] = departures[(head + i) & (departures.length - 1)];
+                }
+                departures = grown;
+                head = 0;
+            }
+            departures[(head + queued) & (departures.length - 1)] = departure;
+            queued++;
+        }
+
+        public String toString()
+        {
+            return from + "->" + to;
+        }
+    }
+
+    private final int hosts;
+    private final List<Link> links = new ArrayList<Link>();
+    private final List<List<Link>> linksInto = new ArrayList<List<Link>>();
+    private final List<Integer> sources = new ArrayList<Integer>();
+
+    // routes[d][h] is the link h sends packets for d on, once computed
+    private Link[][] routes;
+
+    public Topology(int numHosts)
+    {
+        if (numHosts < 2)
+        {
+            throw new IllegalArgumentException("Need at least two hosts");
+        }
+        hosts = numHosts;
+        for (int i = 0; i < hosts; i++)
+        {
+            linksInto.add(new ArrayList<Link>());
+        }
+        routes = new Link[hosts][];
+    }
+
+    // The original channel: A and B joined both ways with the given
+    // probabilities, MIN_LINK_DELAY and a jitter of 9
+    public static Topology twoHost(double loss, double corrupt)
+    {
+        return twoHost(loss, corrupt, 0, NetworkSimulator.MIN_LINK_DELAY, 9,
+                       Jitter.UNIFORM);
+    }
+
+    // A and B joined both ways by links of the given rate (0 for packets
+    // that take no time to send), propagation delay and jitter
+    public static Topology twoHost(double loss, double corrupt, double rate,
+                                   double delay, double jitter,
+                                   Jitter distribution)
+    {
+        Topology t = new Topology(2);
+        t.connect(NetworkSimulator.A, NetworkSimulator.B, loss, corrupt,
+                  delay, jitter);
+        for (Link l : t.links)
+        {
+            if (rate > 0)
+            {
+                l.setRate(rate);
+            }
+            l.setJitterDistribution(distribution);
+        }
+        return t;
+    }
+
+    public Link addLink(int from, int to, double loss, double corrupt,
+                        double delay, double jitter)
+    {
+        checkHost(from);
+        checkHost(to);
+        if ((from == to) || (delay < 0) || (jitter < 0))
+        {
+            throw new IllegalArgumentException("Bad link " + from + "->" + to);
+        }
+        Link link = new Link(from, to, loss, corrupt, delay, jitter);
+        links.add(link);
+        linksInto.get(to).add(link);
+        Arrays.fill(routes, null);
+        return link;
+    }
+
+    // A link each way with the same parameters
+    public void connect(int a, int b, double loss, double corrupt,
+                        double delay, double jitter)
+    {
+        addLink(a, b, loss, corrupt, delay, jitter);
+        addLink(b, a, loss, corrupt, delay, jitter);
+    }
+
+    public void addSource(int host)
+    {
+        checkHost(host);
+        sources.add(host);
+    }
+
+    public int hosts()
+    {
+        return hosts;
+    }
+
+    public List<Link> links()
+    {
+        return links;
+    }
+
+    // The link from one host directly to another, or null if there is
+    // none
+    public Link link(int from, int to)
+    {
+        for (Link l : links)
+        {
+            if ((l.from == from) && (l.to == to))
+            {
+                return l;
+            }
+        }
+        return null;
+    }
+
+    public boolean hasQueues()
+    {
+        for (Link l : links)
+        {
+            if (l.isQueued())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Host at which the n'th (from 0) layer 5 message arrives
+    public int source(long n)
+    {
+        if (sources.isEmpty())
+        {
+            return NetworkSimulator.A;
+        }
+        return sources.get((int)(n % sources.size()));
+    }
+
+    // Smallest delay of any link, which bounds how soon one host can
+    // affect another
+    public double minDelay()
+    {
+        double min = Double.POSITIVE_INFINITY;
+        for (Link l : links)
+        {
+            min = Math.min(min, l.delay);
+        }
+        return min;
+    }
+
+    // First link on the way from host to destination, or null if there
+    // is none
+    public Link route(int host, int destination)
+    {
+        if ((host < 0) || (host >= hosts) ||
+            (destination < 0) || (destination >= hosts))
+        {
+            return null;
+        }
+        Link[] towards = routes[destination];
+        if (towards == null)
+        {
+            towards = shortestPaths(destination);
+            routes[destination] = towards;
+        }
+        return towards[host];
+    }
+
+    // Dijkstra from the destination over the links reversed
+    private Link[] shortestPaths(int destination)
+    {
+        double[] dist = new double[hosts];
+        int[] hops = new int[hosts];
+        Link[] next = new Link[hosts];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        dist[destination] = 0;
+
+        PriorityQueue<double[]> queue = new PriorityQueue<double[]>(
+            (x, y) -> (x[0] != y[0]) ? Double.compare(x[0], y[0])
+                                     : Double.compare(x[1], y[1]));
+        queue.add(new double[] {0, 0, destination});
+        while (!queue.isEmpty())
+        {
+            double[] top = queue.poll();
+            int host = (int)top[2];
+            if ((top[0] != dist[host]) || (top[1] != hops[host]))
+            {
+                continue;
+            }
+            for (Link l : linksInto.get(host))
+            {
+                double d = dist[host] + l.meanDelay();
+                int h = hops[host] + 1;
+                if ((d < dist[l.from]) ||
+                    ((d == dist[l.from]) && (h < hops[l.from])))
+                {
+                    dist[l.from] = d;
+                    hops[l.from] = h;
+                    next[l.from] = l;
+                    queue.add(new double[] {d, h, l.from});
+                }
+            }
+        }
+        return next;
+    }
+
+    // The link named by the second and third fields of a statement
+    private Link existingLink(String[] f)
+    {
+        Link l = link(Integer.parseInt(f[1]), Integer.parseInt(f[2]));
+        if (l == null)
+        {
+            throw new IllegalArgumentException("No such link");
+        }
+        return l;
+    }
+
+    private void checkHost(int host)
+    {
+        if ((host < 0) || (host >= hosts))
+        {
+            throw new IllegalArgumentException("No host " + host);
+        }
+    }
+
+    // Read a topology description, one statement per line:
+    //
+    //   hosts N
+    //   link FROM TO LOSS CORRUPT DELAY JITTER     (one way)
+    //   duplex A B LOSS CORRUPT DELAY JITTER       (both ways)
+    //   source HOST
+    //   rate FROM TO RATE                          (unbounded queue)
+    //   queue FROM TO RATE DISCIPLINE CAPACITY     (see QueueDisciplines)
+    //   jitter FROM TO uniform|exponential
+    //
+    // "hosts" must come first, and rate, queue and jitter follow their
+    // link.  Blank lines and lines starting with #
+    // are ignored.
+    public static Topology parse(Reader in) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(in);
+        Topology t = null;
+        String line;
+        int number = 0;
+        while ((line = reader.readLine()) != null)
+        {
+            number++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+            {
+                continue;
+            }
+            String[] f = line.split("\\s+");
+            try
+            {
+                if (f[0].equals("hosts") && (f.length == 2) && (t == null))
+                {
+                    t = new Topology(Integer.parseInt(f[1]));
+                }
+                else if ((f[0].equals("link") || f[0].equals("duplex")) &&
+                         (f.length == 7) && (t != null))
+                {
+                    int a = Integer.parseInt(f[1]);
+                    int b = Integer.parseInt(f[2]);
+                    double loss = Double.parseDouble(f[3]);
+                    double corrupt = Double.parseDouble(f[4]);
+                    double delay = Double.parseDouble(f[5]);
+                    double jitter = Double.parseDouble(f[6]);
+                    if (f[0].equals("link"))
+                    {
+                        t.addLink(a, b, loss, corrupt, delay, jitter);
+                    }
+                    else
+                    {
+                        t.connect(a, b, loss, corrupt, delay, jitter);
+                    }
+                }
+                else if (f[0].equals("source") && (f.length == 2) &&
+                         (t != null))
+                {
+                    t.addSource(Integer.parseInt(f[1]));
+                }
+                else if (f[0].equals("rate") && (f.length == 4) &&
+                         (t != null))
+                {
+                    t.existingLink(f).setRate(Double.parseDouble(f[3]));
+                }
+                else if (f[0].equals("jitter") && (f.length == 4) &&
+                         (t != null))
+                {
+                    t.existingLink(f).setJitterDistribution(
+                        Jitter.valueOf(f[3].toUpperCase()));
+                }
+                else if (f[0].equals("queue") && (f.length == 6) &&
+                         (t != null))
+                {
+                    Link l = t.existingLink(f);
+                    double rate = Double.parseDouble(f[3]);
+                    l.setQueue(rate, QueueDisciplines.create(
+                        f[4], Integer.parseInt(f[5]),
+                        (Packet.HEADER_SIZE + NetworkSimulator.MAXDATASIZE) /
+                        rate));
+                }
+                else
+                {
+                    throw new IllegalArgumentException("Unexpected statement");
+                }
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new IOException("Line " + number + ": " +
+                                      e.getMessage() + ": " + line);
+            }
+        }
+        if (t == null)
+        {
+            throw new IOException("No hosts statement");
+        }
+        return t;
+    }
+}
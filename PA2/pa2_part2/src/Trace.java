@@ -0,0 +1,417 @@
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+// Structured trace output for the simulator.
+//
+// Every trace statement is declared once with define(), giving it a
+// level, a category and a message template, and is then logged by id
+// with primitive arguments.  A statement whose level is above the trace
+// level, or whose category is switched off, returns after two array
+// loads; nothing is formatted or allocated.  Call sites that would have
+// to compute an argument can test enabled() first.
+//
+// Enabled statements are written as fixed-size records into a ring
+// buffer and formatted onto the output stream by a background thread,
+// so the simulation thread never blocks on console or file I/O unless
+// the ring is full.  Once it has caught up, the writer flushes the
+// stream if it wrote anything since its last flush, and parks until the
+// next statement is logged; it does not flush on a timer, leaving any
+// batching to the stream.  flush() waits until everything logged so far
+// has been written; close() also stops the writer, after which
+// statements are formatted synchronously.
+//
+// Templates refer to the arguments as {0}, {1} and {2} (integers), {d}
+// (a double), {o} (an object, formatted with toString() by the writer,
+// so it must not change after being logged) and {t} (the simulation
+// time at which the statement was logged).
+//
+// A trace is normally fed by one thread.  setConcurrent(true) lets
+// several threads log at once, each with its own simulation time, at
+// the cost of a lock per enabled statement.
+public class Trace
+{
+    // Categories
+    public static final int EVENT = 1;
+    public static final int TIMER = 2;
+    public static final int CHANNEL = 4;
+    public static final int SENDER = 8;
+    public static final int RECEIVER = 16;
+    public static final int ALL = EVENT | TIMER | CHANNEL | SENDER | RECEIVER;
+
+    // Registry of statements, shared by all simulators
+    private static int[] levels = new int[64];
+    private static int[] categories = new int[64];
+    private static String[] templates = new String[64];
+    private static int defined = 0;
+
+    // Record layout in the ring, in longs
+    private static final int RECORD = 8;
+    private static final int MSG = 0;
+    private static final int TIME = 1;
+    private static final int ARG0 = 2;
+    private static final int VALUE = 5;
+    private static final int DEFAULT_CAPACITY = 8192;
+
+    private final PrintStream out;
+    private final int level;
+    private final int mask;
+    private int[] levelOf;
+    private int[] categoryOf;
+
+    private final long[] ring;
+    private final Object[] refs;
+    private final int capacity;
+    private volatile long head;
+    private volatile long tail;
+    private volatile boolean closed;
+    private volatile boolean idle; // The writer is parked, or about to
+    private Thread writer;
+    private double time;
+    private volatile boolean concurrent;
+    private final ThreadLocal<double[]> threadTime =
+        ThreadLocal.withInitial(() -> new double[1]);
+    private final StringBuilder line = new StringBuilder();
+
+    public static synchronized int define(int level, int category,
+                                          String template)
+    {
+        if (defined == levels.length)
+        {
+            levels = Arrays.copyOf(levels, defined * 2);
+            categories = Arrays.copyOf(categories, defined * 2);
+            templates = Arrays.copyOf(templates, defined * 2);
+        }
+        levels[defined] = level;
+        categories[defined] = category;
+        templates[defined] = template;
+        return defined++;
+    }
+
+    public Trace(PrintStream output, int traceLevel, int enabledCategories)
+    {
+        this(output, traceLevel, enabledCategories, DEFAULT_CAPACITY);
+    }
+
+    public Trace(PrintStream output, int traceLevel, int enabledCategories,
+                 int records)
+    {
+        out = output;
+        level = traceLevel;
+        mask = enabledCategories;
+        refresh();
+        capacity = Integer.highestOneBit(Math.max(records - 1, 1)) * 2;
+        ring = new long[capacity * RECORD];
+        refs = new Object[capacity];
+        head = 0;
+        tail = 0;
+        closed = false;
+    }
+
+    // Simulation time stamped on the records logged from now on
+    public void setTime(double t)
+    {
+        if (concurrent)
+        {
+            threadTime.get()[0] = t;
+        }
+        else
+        {
+            time = t;
+        }
+    }
+
+    // Allow logging from several threads; see above
+    public void setConcurrent(boolean on)
+    {
+        concurrent = on;
+    }
+
+    public boolean enabled(int msg)
+    {
+        if (msg >= levelOf.length)
+        {
+            // Defined after this trace was created
+            refresh();
+        }
+        return (levelOf[msg] <= level) && ((categoryOf[msg] & mask) != 0);
+    }
+
+    private void refresh()
+    {
+        synchronized (Trace.class)
+        {
+            levelOf = Arrays.copyOf(levels, defined);
+            categoryOf = Arrays.copyOf(categories, defined);
+        }
+    }
+
+    public void log(int msg)
+    {
+        if (enabled(msg))
+        {
+            put(msg, 0, 0, 0, 0, null);
+        }
+    }
+
+    public void log(int msg, long a)
+    {
+        if (enabled(msg))
+        {
+            put(msg, a, 0, 0, 0, null);
+        }
+    }
+
+    public void log(int msg, long a, long b)
+    {
+        if (enabled(msg))
+        {
+            put(msg, a, b, 0, 0, null);
+        }
+    }
+
+    public void log(int msg, long a, long b, long c)
+    {
+        if (enabled(msg))
+        {
+            put(msg, a, b, c, 0, null);
+        }
+    }
+
+    public void log(int msg, Object o)
+    {
+        if (enabled(msg))
+        {
+            put(msg, 0, 0, 0, 0, o);
+        }
+    }
+
+    public void log(int msg, long a, Object o)
+    {
+        if (enabled(msg))
+        {
+            put(msg, a, 0, 0, 0, o);
+        }
+    }
+
+    public void log(int msg, long a, long b, Object o)
+    {
+        if (enabled(msg))
+        {
+            put(msg, a, b, 0, 0, o);
+        }
+    }
+
+    public void logValue(int msg, double d)
+    {
+        if (enabled(msg))
+        {
+            put(msg, 0, 0, 0, d, null);
+        }
+    }
+
+    public void logValue(int msg, long a, long b, double d)
+    {
+        if (enabled(msg))
+        {
+            put(msg, a, b, 0, d, null);
+        }
+    }
+
+    // Wait until every record logged so far has been written out
+    public void flush()
+    {
+        while (tail != head)
+        {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(50000);
+        }
+        out.flush();
+    }
+
+    // Flush and stop the background writer
+    public void close()
+    {
+        if (closed)
+        {
+            return;
+        }
+        flush();
+        closed = true;
+        if (writer != null)
+        {
+            LockSupport.unpark(writer);
+            try
+            {
+                writer.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            writer = null;
+        }
+    }
+
+    private void put(int msg, long a, long b, long c, double d, Object o)
+    {
+        if (concurrent)
+        {
+            synchronized (this)
+            {
+                put(msg, threadTime.get()[0], a, b, c, d, o);
+            }
+        }
+        else
+        {
+            put(msg, time, a, b, c, d, o);
+        }
+    }
+
+    private void put(int msg, double t, long a, long b, long c, double d,
+                     Object o)
+    {
+        if (closed)
+        {
+            line.setLength(0);
+            format(line, msg, Double.doubleToRawLongBits(t), a, b, c,
+                   Double.doubleToRawLongBits(d), o);
+            out.println(line);
+            return;
+        }
+        if (writer == null)
+        {
+            startWriter();
+        }
+
+        long h = head;
+        while (h - tail >= capacity)
+        {
+            // Ring full: let the writer catch up
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(10000);
+        }
+
+        int slot = (int)(h & (capacity - 1));
+        int base = slot * RECORD;
+        ring[base + MSG] = msg;
+        ring[base + TIME] = Double.doubleToRawLongBits(t);
+        ring[base + ARG0] = a;
+        ring[base + ARG0 + 1] = b;
+        ring[base + ARG0 + 2] = c;
+        ring[base + VALUE] = Double.doubleToRawLongBits(d);
+        refs[slot] = o;
+        head = h + 1;
+        if (idle)
+        {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void startWriter()
+    {
+        writer = new Thread(this::drain, "trace-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private void drain()
+    {
+        StringBuilder sb = new StringBuilder(256);
+        boolean written = false; // Since the last flush
+        while (true)
+        {
+            long t = tail;
+            long h = head;
+            if (t == h)
+            {
+                if (closed)
+                {
+                    return;
+                }
+                if (written)
+                {
+                    out.flush();
+                    written = false;
+                    continue;
+                }
+                // Say so before looking again, so that put() either
+                // sees idle and unparks us or we see its record
+                idle = true;
+                if (tail == head && !closed)
+                {
+                    LockSupport.park(this);
+                }
+                idle = false;
+                continue;
+            }
+
+            for (; t != h; t++)
+            {
+                int slot = (int)(t & (capacity - 1));
+                int base = slot * RECORD;
+                sb.setLength(0);
+                format(sb, (int)ring[base + MSG], ring[base + TIME],
+                       ring[base + ARG0], ring[base + ARG0 + 1],
+                       ring[base + ARG0 + 2], ring[base + VALUE], refs[slot]);
+                refs[slot] = null;
+                out.println(sb);
+                // Hand the slot back straight away so a full ring drains
+                // one record at a time
+                tail = t + 1;
+            }
+            written = true;
+        }
+    }
+
+    private static String template(int msg)
+    {
+        synchronized (Trace.class)
+        {
+            return templates[msg];
+        }
+    }
+
+    private void format(StringBuilder sb, int msg, long timeBits, long a,
+                        long b, long c, long valueBits, Object o)
+    {
+        String template = template(msg);
+        int n = template.length();
+        for (int i = 0; i < n; i++)
+        {
+            char ch = template.charAt(i);
+            if ((ch == '{') && (i + 2 < n) && (template.charAt(i + 2) == '}'))
+            {
+                char key = template.charAt(i + 1);
+                i += 2;
+                switch (key)
+                {
+                    case '0':
+                        sb.append(a);
+                        break;
+                    case '1':
+                        sb.append(b);
+                        break;
+                    case '2':
+                        sb.append(c);
+                        break;
+                    case 'd':
+                        sb.append(Double.longBitsToDouble(valueBits));
+                        break;
+                    case 't':
+                        sb.append(Double.longBitsToDouble(timeBits));
+                        break;
+                    case 'o':
+                        sb.append(o);
+                        break;
+                    default:
+                        sb.append('{').append(key).append('}');
+                }
+            }
+            else
+            {
+                sb.append(ch);
+            }
+        }
+    }
+}
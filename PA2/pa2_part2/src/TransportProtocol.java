@@ -0,0 +1,615 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * A reliable transport protocol, run by StudentNetworkSimulator between
+ * its hosts A and B.
+ *
+ * Implementations supply the same callbacks a NetworkSimulator subclass
+ * would (aOutput, aInput, aTimerInterrupt, bInput and the two inits) and
+ * reach the simulator only through the handles here: toLayer3, deliver
+ * (to layer 5), startTimer, stopTimer, getTime and trace.  The handles go
+ * through the simulator, so a protocol runs unchanged as a flow of a
+ * larger simulation.
+ *
+ * The statistics that Simulation_done prints are kept here, so every
+ * protocol reports them the same way: implementations count original
+ * packets, retransmissions, ACKs and corrupted packets in the protected
+ * fields and report each acknowledged packet with
+ * {@link #sampleRoundTrip}; deliveries, latencies and bytes sent are
+ * counted by the handles.
+ *
+ * A sender keeps at most {@link #sendWindow()} packets in flight, which
+ * is WindowSize unless a {@link CongestionControl} is set.  Protocols
+ * report ACKs, duplicate ACKs, fast retransmits and timeouts to it
+ * through the congestion* methods, and the window it chooses is traced,
+ * optionally logged, and summarised in Simulation_done.
+ *
+ * Timers run for {@link #rto()}: RxmtInterval, or with an adaptive
+ * timeout a {@link RetransmissionTimeout}.  Protocols feed it with
+ * {@link #sampleTimeout} and back it off with {@link #backOffTimeout()}
+ * when a timer runs out.
+ */
+public abstract class TransportProtocol {
+    public static final String TIMEOUTS = "fixed, adaptive";
+
+    public static final int A = NetworkSimulator.A;
+    public static final int B = NetworkSimulator.B;
+    public static final int FirstSeqNo = 0;
+
+    private StudentNetworkSimulator host;
+    private PacketChecksum checksumStrategy = new CharSumChecksum();
+
+    protected int WindowSize;
+    protected double RxmtInterval;
+    protected int LimitSeqNo;
+
+    // Statistics
+    protected int originalPackets; // Number of original packets sent by A
+    protected int retransmissions;
+    protected int ackSent;
+    protected int corruptedPackets; // Number of corrupted packets seen by A
+    protected int corruptedPacketsB; // Number of corrupted packets seen by B
+    private int delivered; // Number of packets delivered to layer5
+    private double totalRTTTime;
+    private int rttCount;
+    private double totalCommunicationTime;
+    private int totalCommunicationCount;
+    private LogHistogram rttHistogram;
+    private LogHistogram communicationHistogram;
+    // Time each message still waiting at A arrived from layer 5, in
+    // order; makePacket stamps it on the message's packet, which carries
+    // it to B, so that A and B share nothing under the parallel engine
+    private Deque<Double> messageArrivals;
+    private LogHistogram latencyHistogram; // Layer 5 at A to layer 5 at B
+    private long bytesSentA; // Packet.size() of everything A sent
+    private long bytesSentB;
+
+    // Congestion control, made afresh for each run, and the window it has
+    // chosen over time
+    private String congestionName = "none";
+    private CongestionControl congestion;
+    private PrintStream windowLog;
+    private double lastWindow;
+    private double lastWindowChange;
+    private double windowArea; // Integral of the window up to lastWindowChange
+    private double largestWindow;
+    private int fastReductions;
+    private int timeoutReductions;
+
+    // Retransmission timeout: RxmtInterval unless adaptive
+    private boolean adaptiveTimeout = false;
+    private double minTimeout = RetransmissionTimeout.DEFAULT_MIN;
+    private double maxTimeout = RetransmissionTimeout.DEFAULT_MAX;
+    private RetransmissionTimeout timeout;
+
+    private static final int T_CWND = Trace.define(2, Trace.SENDER,
+            "cwnd: {d}");
+    private static final int T_RTO = Trace.define(2, Trace.TIMER,
+            "rto: {d}");
+
+    /**
+     * The short name this protocol is created by in {@link TransportProtocols}.
+     */
+    public abstract String getName();
+
+    protected abstract void aInit();
+
+    protected abstract void bInit();
+
+    protected abstract void aOutput(Message message);
+
+    protected abstract void aInput(Packet packet);
+
+    protected abstract void aTimerInterrupt();
+
+    protected abstract void bInput(Packet packet);
+
+    /**
+     * Write the protocol's own state for a checkpoint: everything aInit()
+     * and bInit() set up.  The statistics are written separately.
+     */
+    protected abstract void saveState(DataOutputStream cp) throws IOException;
+
+    protected abstract void restoreState(DataInputStream cp) throws IOException;
+
+    // Called by the simulator
+
+    final void attach(StudentNetworkSimulator simulator, int winsize, double timeout) {
+        host = simulator;
+        WindowSize = winsize;
+        LimitSeqNo = winsize * 2;
+        RxmtInterval = timeout;
+    }
+
+    final void init() {
+        originalPackets = 0;
+        retransmissions = 0;
+        ackSent = 0;
+        corruptedPackets = 0;
+        corruptedPacketsB = 0;
+        delivered = 0;
+        totalRTTTime = 0;
+        rttCount = 0;
+        totalCommunicationTime = 0;
+        totalCommunicationCount = 0;
+        rttHistogram = new LogHistogram();
+        communicationHistogram = new LogHistogram();
+        messageArrivals = new ArrayDeque<>();
+        latencyHistogram = new LogHistogram();
+        bytesSentA = 0;
+        bytesSentB = 0;
+        congestion = CongestionControls.create(congestionName, WindowSize);
+        lastWindow = congestion.window();
+        lastWindowChange = 0;
+        windowArea = 0;
+        largestWindow = lastWindow;
+        fastReductions = 0;
+        timeoutReductions = 0;
+        timeout = adaptiveTimeout
+                ? new RetransmissionTimeout(RxmtInterval, minTimeout, maxTimeout) : null;
+        logWindow();
+        aInit();
+        bInit();
+    }
+
+    final void fromLayer5(Message message) {
+        messageArrivals.addLast(getTime());
+        aOutput(message);
+    }
+
+    public void setChecksumStrategy(PacketChecksum strategy) {
+        checksumStrategy = strategy;
+    }
+
+    /**
+     * Use the named congestion control, one of
+     * {@link CongestionControls#NAMES}, from the next run on.
+     */
+    public void setCongestionControl(String name) {
+        congestion = CongestionControls.create(name, WindowSize);
+        congestionName = name;
+        lastWindow = congestion.window();
+        largestWindow = lastWindow;
+    }
+
+    /**
+     * Use the named retransmission timeout, one of {@link #TIMEOUTS}, from
+     * the next run on: RxmtInterval throughout, or an adaptive timeout
+     * starting from it.
+     */
+    public void setRetransmissionTimeout(String name) {
+        switch (name) {
+            case "fixed":
+                adaptiveTimeout = false;
+                break;
+            case "adaptive":
+                adaptiveTimeout = true;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown retransmission timeout: "
+                        + name + " (expected one of " + TIMEOUTS + ")");
+        }
+    }
+
+    /**
+     * Keep an adaptive timeout within [min, max].
+     */
+    public void setTimeoutBounds(double min, double max) {
+        if (!(min > 0) || !(max >= min)) {
+            throw new IllegalArgumentException("Need 0 < min <= max for the timeout");
+        }
+        minTimeout = min;
+        maxTimeout = max;
+    }
+
+    /**
+     * Write the time, window and slow start threshold to log, one line
+     * each time the window changes; null for none.
+     */
+    public void setWindowLog(PrintStream log) {
+        windowLog = log;
+    }
+
+    // Handles onto the simulator
+
+    protected void toLayer3(int callingEntity, Packet p) {
+        if (callingEntity == A) {
+            bytesSentA += p.size();
+        } else {
+            bytesSentB += p.size();
+        }
+        host.toLayer3(callingEntity, p);
+    }
+
+    /**
+     * Pass a packet's payload up to layer 5 at B in its own form.
+     */
+    protected void deliver(Packet packet) {
+        if (packet.isBinary()) {
+            host.toLayer5(packet.getPayloadBytes());
+        } else {
+            host.toLayer5(packet.getPayload());
+        }
+        delivered++;
+        double arrived = packet.getLayer5Time();
+        if (arrived >= 0) {
+            latencyHistogram.add(getTime() - arrived);
+        }
+    }
+
+    protected void startTimer(int entity, double increment) {
+        host.startTimer(entity, increment);
+    }
+
+    protected void stopTimer(int entity) {
+        host.stopTimer(entity);
+    }
+
+    protected double getTime() {
+        return host.getTime();
+    }
+
+    protected Trace trace() {
+        return host.trace;
+    }
+
+    // Retransmission timeout
+
+    /**
+     * How long a retransmission timer started now should run.
+     */
+    protected double rto() {
+        return timeout != null ? timeout.current() : RxmtInterval;
+    }
+
+    /**
+     * Note that a retransmission timer ran out: an adaptive timeout
+     * doubles, up to three times, until the next RTT sample.
+     */
+    protected void backOffTimeout() {
+        if (timeout != null) {
+            timeout.backOff();
+            trace().logValue(T_RTO, timeout.current());
+        }
+    }
+
+    // Congestion control
+
+    /**
+     * Packets the sender may have in flight: the congestion window, but
+     * at least one packet and at most WindowSize.
+     */
+    protected int sendWindow() {
+        return (int) Math.max(1, Math.min(WindowSize, congestion.window()));
+    }
+
+    protected void congestionAck(int acked, int flight) {
+        congestion.onAck(getTime(), acked, flight);
+        windowChanged();
+    }
+
+    protected void congestionDuplicateAck(int flight) {
+        congestion.onDuplicateAck(getTime(), flight);
+        windowChanged();
+    }
+
+    protected void congestionFastRetransmit(int flight) {
+        double before = lastWindow;
+        congestion.onFastRetransmit(getTime(), flight);
+        if (windowChanged() < before) {
+            fastReductions++;
+        }
+    }
+
+    protected void congestionTimeout(int flight) {
+        double before = lastWindow;
+        congestion.onTimeout(getTime(), flight);
+        if (windowChanged() < before) {
+            timeoutReductions++;
+        }
+    }
+
+    // Account for the window up to now and note its new value
+    private double windowChanged() {
+        double w = congestion.window();
+        if (w != lastWindow) {
+            double now = getTime();
+            windowArea += lastWindow * (now - lastWindowChange);
+            lastWindowChange = now;
+            lastWindow = w;
+            largestWindow = Math.max(largestWindow, w);
+            trace().logValue(T_CWND, w);
+            logWindow();
+        }
+        return w;
+    }
+
+    private void logWindow() {
+        if (windowLog != null) {
+            windowLog.println(getTime() + "\t" + congestion.window() + "\t"
+                    + congestion.threshold());
+        }
+    }
+
+    // Helpers shared by the implementations
+
+    /**
+     * Record the acknowledgement of a packet sent at sendTime: its
+     * communication time, and its RTT unless it was retransmitted.
+     */
+    protected void sampleRoundTrip(double sendTime, boolean original) {
+        double current_time = getTime();
+        totalCommunicationTime += current_time - sendTime;
+        totalCommunicationCount++;
+        communicationHistogram.add(current_time - sendTime);
+        if (original) {
+            totalRTTTime += current_time - sendTime;
+            rttCount++;
+            rttHistogram.add(current_time - sendTime);
+        }
+    }
+
+    /**
+     * Feed an adaptive timeout the RTT of a packet sent at sendTime.  By
+     * Karn's rule the packet must have been sent only once, and so must
+     * any other packet the ACK newly acknowledges, or the ACK may answer
+     * a retransmission rather than the packet.
+     */
+    protected void sampleTimeout(double sendTime) {
+        if (timeout != null) {
+            timeout.sample(getTime() - sendTime);
+            trace().logValue(T_RTO, timeout.current());
+        }
+    }
+
+    /**
+     * A data packet carrying message, checksummed with the configured
+     * strategy.  Each message must be made into a packet once, in the
+     * order they came from layer 5, since the packet is stamped with the
+     * next layer 5 arrival time.
+     */
+    protected Packet makePacket(int seqnum, Message msg) {
+        Packet p;
+        if (msg.isBinary()) {
+            byte[] data = msg.getBytes();
+            p = new Packet(seqnum, -1, checksumStrategy.compute(seqnum, -1, data), data);
+        } else {
+            String data = msg.getData();
+            p = new Packet(seqnum, -1, calculateChecksum(seqnum, -1, data), data);
+        }
+        Double arrived = messageArrivals.pollFirst();
+        if (arrived != null) {
+            p.setLayer5Time(arrived);
+        }
+        return p;
+    }
+
+    // Create checksum with the configured strategy (payload character sum
+    // by default)
+    protected int calculateChecksum(int seqnum, int acknum, String payload) {
+        return checksumStrategy.compute(seqnum, acknum, payload);
+    }
+
+    // Check if a packet is corrupted
+    protected boolean isCorrupted(Packet packet) {
+        if (packet.getSeqnum()>=LimitSeqNo){
+            return true;
+        }
+        if(packet.getAcknum()>=LimitSeqNo){
+            return true;
+        }
+        int calculatedChecksum;
+        if (packet.isBinary()) {
+            calculatedChecksum = checksumStrategy.compute(packet.getSeqnum(),
+                    packet.getAcknum(), packet.getPayloadBytes());
+        } else {
+            calculatedChecksum = calculateChecksum(packet.getSeqnum(),
+                    packet.getAcknum(), packet.getPayload());
+        }
+        return calculatedChecksum != packet.getChecksum();
+    }
+
+    // Check if seq1 <= seq2 considering wrap-around
+    protected boolean isSeqLessThanOrEqual(int seq1, int seq2) {
+        if (seq1 <= seq2) {
+            return seq2-seq1<LimitSeqNo/2;
+        } else {
+            return seq2-seq1 > LimitSeqNo/2;
+        }
+    }
+
+    // Check if seqNum is within WindowSize of lowerBound, considering
+    // wrap-around
+    protected boolean withinWindow(int lowerBound, int seqNum) {
+        int upperBound = (lowerBound + WindowSize) % LimitSeqNo;
+
+        if (lowerBound < upperBound) {
+            return seqNum >= lowerBound && seqNum < upperBound;
+        } else { // Wrap-around
+            return seqNum >= lowerBound || seqNum < upperBound;
+        }
+    }
+
+    // Checkpoint support
+
+    final void save(DataOutputStream cp) throws IOException {
+        cp.writeInt(WindowSize);
+        cp.writeDouble(RxmtInterval);
+        cp.writeInt(LimitSeqNo);
+
+        cp.writeInt(originalPackets);
+        cp.writeInt(retransmissions);
+        cp.writeInt(ackSent);
+        cp.writeInt(corruptedPackets);
+        cp.writeInt(corruptedPacketsB);
+        cp.writeInt(delivered);
+        cp.writeDouble(totalRTTTime);
+        cp.writeInt(rttCount);
+        cp.writeDouble(totalCommunicationTime);
+        cp.writeInt(totalCommunicationCount);
+        rttHistogram.save(cp);
+        communicationHistogram.save(cp);
+        cp.writeInt(messageArrivals.size());
+        for (double t : messageArrivals) {
+            cp.writeDouble(t);
+        }
+        latencyHistogram.save(cp);
+        cp.writeLong(bytesSentA);
+        cp.writeLong(bytesSentB);
+        cp.writeUTF(congestion.getName());
+        congestion.save(cp);
+        cp.writeDouble(lastWindow);
+        cp.writeDouble(lastWindowChange);
+        cp.writeDouble(windowArea);
+        cp.writeDouble(largestWindow);
+        cp.writeInt(fastReductions);
+        cp.writeInt(timeoutReductions);
+        cp.writeBoolean(timeout != null);
+        if (timeout != null) {
+            timeout.save(cp);
+        }
+
+        saveState(cp);
+    }
+
+    final void restore(DataInputStream cp) throws IOException {
+        WindowSize = cp.readInt();
+        RxmtInterval = cp.readDouble();
+        LimitSeqNo = cp.readInt();
+
+        originalPackets = cp.readInt();
+        retransmissions = cp.readInt();
+        ackSent = cp.readInt();
+        corruptedPackets = cp.readInt();
+        corruptedPacketsB = cp.readInt();
+        delivered = cp.readInt();
+        totalRTTTime = cp.readDouble();
+        rttCount = cp.readInt();
+        totalCommunicationTime = cp.readDouble();
+        totalCommunicationCount = cp.readInt();
+        rttHistogram.restore(cp);
+        communicationHistogram.restore(cp);
+        messageArrivals = new ArrayDeque<>();
+        for (int i = cp.readInt(); i > 0; i--) {
+            messageArrivals.addLast(cp.readDouble());
+        }
+        latencyHistogram.restore(cp);
+        bytesSentA = cp.readLong();
+        bytesSentB = cp.readLong();
+        String name = cp.readUTF();
+        if (!name.equals(congestionName)) {
+            throw new IOException("Checkpoint was saved with congestion control "
+                    + name + ", not " + congestionName);
+        }
+        congestion = CongestionControls.create(name, WindowSize);
+        congestion.restore(cp);
+        lastWindow = cp.readDouble();
+        lastWindowChange = cp.readDouble();
+        windowArea = cp.readDouble();
+        largestWindow = cp.readDouble();
+        fastReductions = cp.readInt();
+        timeoutReductions = cp.readInt();
+        if (cp.readBoolean() != adaptiveTimeout) {
+            throw new IOException("Checkpoint was saved with retransmission timeout "
+                    + (adaptiveTimeout ? "fixed, not adaptive" : "adaptive, not fixed"));
+        }
+        if (adaptiveTimeout) {
+            timeout = new RetransmissionTimeout(RxmtInterval, minTimeout, maxTimeout);
+            timeout.restore(cp);
+        }
+
+        restoreState(cp);
+    }
+
+    static void writePacketMap(DataOutputStream cp, Map<Integer, Packet> map)
+            throws IOException {
+        cp.writeInt(map.size());
+        for (Map.Entry<Integer, Packet> entry : map.entrySet()) {
+            cp.writeInt(entry.getKey());
+            Checkpoint.writePacket(cp, entry.getValue());
+        }
+    }
+
+    static Map<Integer, Packet> readPacketMap(DataInputStream cp) throws IOException {
+        Map<Integer, Packet> map = new HashMap<>();
+        for (int i = cp.readInt(); i > 0; i--) {
+            int seq = cp.readInt();
+            map.put(seq, Checkpoint.readPacket(cp));
+        }
+        return map;
+    }
+
+    // Statistics
+
+    /**
+     * Statistics of the run so far, as printed by Simulation_done.
+     */
+    public SimulationResult getResult() {
+        int corruptedPackets = this.corruptedPackets + corruptedPacketsB;
+        return new SimulationResult(getTime(), originalPackets, retransmissions,
+                delivered, ackSent, corruptedPackets,
+                (double) (retransmissions-corruptedPackets)/(originalPackets+retransmissions+ackSent),
+                (double) corruptedPackets / (originalPackets+retransmissions+ackSent-retransmissions+corruptedPackets),
+                rttCount > 0 ? (totalRTTTime / rttCount) : 0,
+                totalCommunicationTime/totalCommunicationCount);
+    }
+
+    /**
+     * Print the statistics block of Simulation_done.
+     */
+    public void printStatistics(PrintStream out) {
+        SimulationResult result = getResult();
+        out.println("\n\n===============STATISTICS=======================");
+        out.println("Number of original packets transmitted by A: " + result.getOriginalPackets());
+        out.println("Number of retransmissions by A: " + result.getRetransmissions());
+        out.println("Number of data packets delivered to layer5 at B: " + result.getDelivered());
+        out.println("Number of ACK packets sent by B: " + result.getAckSent());
+        out.println("Number of corrupted packets: " + result.getCorruptedPackets());
+        out.println("Ratio of lost packets: " + result.getLostRatio());
+        out.println("Ratio of corrupted packets: " + result.getCorruptedRatio());
+        out.println("Average RTT: " + result.getAverageRTT());
+        out.println("Average communication time: " + result.getAverageCommunicationTime());
+        out.println("==================================================");
+
+        // PRINT YOUR OWN STATISTIC HERE TO CHECK THE CORRECTNESS OF YOUR PROGRAM
+        out.println("\nEXTRA:");
+        out.println("All RTT: " + (rttCount > 0 ? (totalRTTTime / rttCount) : 0)*rttCount);
+        out.println("Count RTT: "+rttCount);
+        out.println("Total time to communicate: " + totalCommunicationTime);
+        out.println("Counter for time to communicate:: " + totalCommunicationCount);
+
+        out.println("\nDISTRIBUTIONS:");
+        out.println("RTT: " + rttHistogram.summary());
+        out.println("Communication time: " + communicationHistogram.summary());
+        out.println("End-to-end latency: " + latencyHistogram.summary());
+        double payload = (double) delivered * NetworkSimulator.MAXDATASIZE;
+        out.println("Goodput (bytes per time unit): " + payload / getTime());
+        long bytesSent = bytesSentA + bytesSentB;
+        out.println("Link efficiency (payload delivered / bytes sent): "
+                + (bytesSent > 0 ? payload / bytesSent : 0));
+
+        if (!congestionName.equals("none")) {
+            double now = getTime();
+            double area = windowArea + lastWindow * (now - lastWindowChange);
+            out.println("\nCONGESTION:");
+            out.println("Control: " + congestionName);
+            out.println("Average window (packets, time-weighted): "
+                    + (now > 0 ? area / now : lastWindow));
+            out.println("Largest window: " + largestWindow);
+            out.println("Final window: " + congestion.window()
+                    + ", slow start threshold: " + congestion.threshold());
+            out.println("Window reductions by fast retransmit: " + fastReductions
+                    + ", by timeout: " + timeoutReductions);
+        }
+
+        if (timeout != null) {
+            out.println("\nTIMEOUT:");
+            out.println("Smoothed RTT: " + timeout.smoothedRtt()
+                    + ", RTT variation: " + timeout.rttVariation());
+            out.println("Final timeout: " + timeout.current()
+                    + " (bounds " + minTimeout + " to " + maxTimeout + ")");
+            out.println("Timer expiries backed off: " + timeout.backoffs());
+        }
+    }
+}
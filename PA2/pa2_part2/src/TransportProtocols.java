@@ -0,0 +1,26 @@
+/**
+ * Builds TransportProtocol implementations from the short names used on
+ * launcher command lines.
+ */
+public class TransportProtocols {
+    public static final String NAMES = "sack, sack-timers, gbn, sr";
+
+    private TransportProtocols() {
+    }
+
+    public static TransportProtocol create(String name) {
+        switch (name) {
+            case "sack":
+                return new SackProtocol();
+            case "sack-timers":
+                return new SackProtocol(true);
+            case "gbn":
+                return new GoBackNProtocol();
+            case "sr":
+                return new SelectiveRepeatProtocol();
+            default:
+                throw new IllegalArgumentException("Unknown protocol: " + name
+                        + " (expected one of " + NAMES + ")");
+        }
+    }
+}